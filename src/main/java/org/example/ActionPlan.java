@@ -0,0 +1,163 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.openqa.selenium.WebElement;
+
+/**
+ * An ordered list of steps (find, click, type, enter and check) to execute with Similo.execute.
+ * The steps use the same properties files as the corresponding single step methods in Similo.
+ */
+public class ActionPlan {
+    public enum Action {FIND, CLICK, TYPE, ENTER, CHECK}
+
+    /**
+     * A step in a plan and its result (after execution).
+     */
+    public static class Step {
+        private final Action action;
+        private final String fileName;
+        private final String text;
+        private final String validExpression;
+        private boolean success = false;
+        private WebElement element = null;
+
+        private Step(Action action, String fileName, String text, String validExpression) {
+            this.action = action;
+            this.fileName = fileName;
+            this.text = text;
+            this.validExpression = validExpression;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        /**
+         * @return The text to type or null if not a type or enter step
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return The expression to check or null to check the default property
+         */
+        public String getValidExpression() {
+            return validExpression;
+        }
+
+        /**
+         * @return true if the step has been executed successfully
+         */
+        public boolean isSuccess() {
+            return success;
+        }
+
+        void setSuccess(boolean success) {
+            this.success = success;
+        }
+
+        /**
+         * @return The located WebElement (find and check steps) or null if not found
+         */
+        public WebElement getElement() {
+            return element;
+        }
+
+        void setElement(WebElement element) {
+            this.element = element;
+        }
+
+        /**
+         * @return true if the step is expected to change the GUI state (click and enter)
+         */
+        public boolean isChangingState() {
+            return action == Action.CLICK || action == Action.ENTER;
+        }
+    }
+
+    private final List<Step> steps = new ArrayList<>();
+
+    /**
+     * Add a find step
+     *
+     * @param fileName Name of the file that contains the locators (excluding the .properties extension).
+     * @return This plan
+     */
+    public ActionPlan find(String fileName) {
+        steps.add(new Step(Action.FIND, fileName, null, null));
+        return this;
+    }
+
+    /**
+     * Add a click step
+     *
+     * @param fileName Name of the file that contains the locators (excluding the .properties extension).
+     * @return This plan
+     */
+    public ActionPlan click(String fileName) {
+        steps.add(new Step(Action.CLICK, fileName, null, null));
+        return this;
+    }
+
+    /**
+     * Add a type step
+     *
+     * @param fileName   Name of the file that contains the locators (excluding the .properties extension).
+     * @param textToType The text to type in the located web element
+     * @return This plan
+     */
+    public ActionPlan type(String fileName, String textToType) {
+        steps.add(new Step(Action.TYPE, fileName, textToType, null));
+        return this;
+    }
+
+    /**
+     * Add an enter step (type a text and a return)
+     *
+     * @param fileName   Name of the file that contains the locators (excluding the .properties extension).
+     * @param textToType The text to type in the located web element
+     * @return This plan
+     */
+    public ActionPlan enter(String fileName, String textToType) {
+        steps.add(new Step(Action.ENTER, fileName, textToType, null));
+        return this;
+    }
+
+    /**
+     * Add a check step that compares the default property with the fileName
+     *
+     * @param fileName Property value to find (defaultProperty) and name of property file.
+     * @return This plan
+     */
+    public ActionPlan check(String fileName) {
+        steps.add(new Step(Action.CHECK, fileName, null, null));
+        return this;
+    }
+
+    /**
+     * Add a check step
+     *
+     * @param fileName        Name of the file that contains the locators (excluding the .properties extension).
+     * @param validExpression An expression that determines if the web element is valid (for example: {text}=Name, {width}>100 or {text}*=contains)
+     * @return This plan
+     */
+    public ActionPlan check(String fileName, String validExpression) {
+        steps.add(new Step(Action.CHECK, fileName, null, validExpression));
+        return this;
+    }
+
+    /**
+     * @return The steps in order of execution
+     */
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+}
@@ -0,0 +1,246 @@
+package org.example;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A CSV file split by app into one CSV file per app (in a folder) so that one app at a time can be read.
+ * The rows are read and written one by one, only the app names are kept in memory.
+ * Each row gets the widget_id it has in SimiloLLM.readCSV of the whole file.
+ */
+public class AppPartitions
+{
+	private static final int MAX_OPEN_FILES=32;
+
+	private final File folder;
+	private final List<String> header;
+	private final Map<String, File> files=new LinkedHashMap<String, File>();
+
+	private AppPartitions(File folder, List<String> header)
+	{
+		this.folder=folder;
+		this.header=header;
+	}
+
+	/**
+	 * Split a CSV file by app
+	 * @param csvFile The CSV file (Cp1252)
+	 * @param folder Folder for the app files (created)
+	 * @param columns The columns to keep or null for all
+	 * @return The partitions
+	 * @throws IOException If the file can't be read or written
+	 */
+	public static AppPartitions partition(File csvFile, File folder, Collection<String> columns) throws IOException
+	{
+		folder.mkdirs();
+		if(columns!=null && !columns.contains("app"))
+		{
+			columns=new ArrayList<String>(columns);
+			columns.add("app");
+		}
+		CSVReader csvReader=new CSVReader(csvFile, columns);
+		// The least recently used files are closed (and opened again to append)
+		Map<String, Writer> writers=new LinkedHashMap<String, Writer>(16, 0.75f, true);
+		try
+		{
+			List<String> header=new ArrayList<String>();
+			for(String column:csvReader.getHeaderLine())
+			{
+				if((columns==null || columns.contains(column)) && !header.contains(column) && !"widget_id".equals(column))
+				{
+					header.add(column);
+				}
+			}
+			header.add("widget_id");
+			AppPartitions partitions=new AppPartitions(folder, header);
+
+			int id=0;
+			while(csvReader.hasNext())
+			{
+				Properties row=csvReader.next();
+				row.put("widget_id", ""+id);
+				id++;
+				String app=(String)row.get("app");
+				if(app==null)
+				{
+					continue;
+				}
+				Writer writer=writers.get(app);
+				if(writer==null)
+				{
+					File file=partitions.files.get(app);
+					boolean append=file!=null;
+					if(!append)
+					{
+						file=new File(folder, partitions.files.size()+".csv");
+						partitions.files.put(app, file);
+					}
+					if(writers.size()>=MAX_OPEN_FILES)
+					{
+						Map.Entry<String, Writer> eldest=writers.entrySet().iterator().next();
+						eldest.getValue().close();
+						writers.remove(eldest.getKey());
+					}
+					writer=new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), "Cp1252"));
+					writers.put(app, writer);
+					if(!append)
+					{
+						writeLine(writer, header, null);
+					}
+				}
+				writeLine(writer, header, row);
+			}
+			return partitions;
+		}
+		finally
+		{
+			csvReader.close();
+			for(Writer writer:writers.values())
+			{
+				writer.close();
+			}
+		}
+	}
+
+	/**
+	 * Split a CSV file by app into a new temp folder
+	 * @param csvFilename The CSV file (a resource)
+	 * @param columns The columns to keep or null for all
+	 * @return The partitions or null if the file can't be read or written
+	 */
+	public static AppPartitions partition(String csvFilename, String... columns)
+	{
+		try
+		{
+			File csvFile=new File(CSVReader.class.getClassLoader().getResource(csvFilename).getFile());
+			File folder=Files.createTempDirectory("partitions").toFile();
+			return partition(csvFile, folder, columns.length>0 ? Arrays.asList(columns) : null);
+		}
+		catch(Exception e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @return The apps in the order they first appear in the CSV file
+	 */
+	public List<String> getApps()
+	{
+		return new ArrayList<String>(files.keySet());
+	}
+
+	/**
+	 * Read the rows of an app
+	 * @param app The app
+	 * @return The rows in file order with widget_id (empty if the app is not found) or null if the file can't be read
+	 */
+	public List<Properties> read(String app)
+	{
+		List<Properties> rows=new ArrayList<Properties>();
+		File file=files.get(app);
+		if(file==null)
+		{
+			return rows;
+		}
+		CSVReader csvReader=null;
+		try
+		{
+			csvReader=new CSVReader(file);
+			while(csvReader.hasNext())
+			{
+				rows.add(csvReader.next());
+			}
+			return rows;
+		}
+		catch(Exception e)
+		{
+			return null;
+		}
+		finally
+		{
+			if(csvReader!=null)
+			{
+				csvReader.close();
+			}
+		}
+	}
+
+	public File getFolder()
+	{
+		return folder;
+	}
+
+	public List<String> getHeader()
+	{
+		return header;
+	}
+
+	/**
+	 * Delete the app files and the folder
+	 */
+	public void delete()
+	{
+		for(File file:files.values())
+		{
+			file.delete();
+		}
+		files.clear();
+		folder.delete();
+	}
+
+	/**
+	 * Write a line that CSVReader reads as the same values
+	 * @param row The values or null to write the header
+	 */
+	private static void writeLine(Writer writer, List<String> header, Properties row) throws IOException
+	{
+		for(int i=0; i<header.size(); i++)
+		{
+			if(i>0)
+			{
+				writer.write(',');
+			}
+			String value=row!=null ? (String)row.get(header.get(i)) : header.get(i);
+			writeValue(writer, value);
+		}
+		writer.write("\r\n");
+	}
+
+	private static void writeValue(Writer writer, String value) throws IOException
+	{
+		if(value==null || value.length()==0)
+		{
+			// Unprotected - "" is read as "
+			return;
+		}
+		writer.write('\"');
+		if(value.charAt(0)=='\"')
+		{
+			// A " right after the first " would be read as " (and the doubled " would not), the space is trimmed
+			writer.write(' ');
+		}
+		for(int i=0; i<value.length(); i++)
+		{
+			char c=value.charAt(i);
+			if(c=='\"')
+			{
+				writer.write('\"');
+			}
+			writer.write(c);
+		}
+		writer.write('\"');
+	}
+}
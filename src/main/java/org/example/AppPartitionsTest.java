@@ -0,0 +1,103 @@
+package org.example;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * The rows of each app read from AppPartitions are the same as in the CSV file (with the widget_id of the whole file)
+ */
+public class AppPartitionsTest
+{
+	@Test
+	public void roundTrip() throws IOException
+	{
+		StringBuilder csv=new StringBuilder("app,text,xpath\r\n");
+		// A value that starts with " (written as """...), only " and "" and values with separators and line breaks
+		csv.append("a,\"\"\"quoted\"\" start\",/html[1]\r\n");
+		csv.append("b,\"\"\"\",/html[2]\r\n");
+		csv.append("a,\"\"\"\"\"\",/html[3]\r\n");
+		csv.append("c,\"x, y\r\nz\",\r\n");
+		csv.append(",empty app,/html[5]\r\n");
+		csv.append("b,  ,\"ends with \"\"\"\r\n");
+		// More apps than open files
+		for(int i=0; i<40; i++)
+		{
+			csv.append("app"+i+",text "+i+",/html["+i+"]\r\n");
+			csv.append("a,\"again \"\"\"\""+i+"\",/div["+i+"]\r\n");
+		}
+		assertRoundTrip(csv.toString(), null);
+		assertRoundTrip(csv.toString(), Arrays.asList("text"));
+	}
+
+	private static void assertRoundTrip(String csv, List<String> columns) throws IOException
+	{
+		File file=File.createTempFile("partitions", ".csv");
+		File folder=Files.createTempDirectory("partitions").toFile();
+		AppPartitions partitions=null;
+		try
+		{
+			Writer writer=new OutputStreamWriter(new FileOutputStream(file), "Cp1252");
+			writer.write(csv);
+			writer.close();
+
+			// All rows with the widget_id as in SimiloLLM.readCSV
+			List<Properties> rows=new ArrayList<Properties>();
+			Set<String> apps=new LinkedHashSet<String>();
+			CSVReader csvReader=new CSVReader(file);
+			while(csvReader.hasNext())
+			{
+				Properties row=csvReader.next();
+				row.put("widget_id", ""+rows.size());
+				rows.add(row);
+				apps.add(row.getProperty("app"));
+			}
+
+			partitions=AppPartitions.partition(file, folder, columns);
+			assertEquals(new ArrayList<String>(apps), partitions.getApps());
+			for(String app:apps)
+			{
+				List<Properties> expected=new ArrayList<Properties>();
+				for(Properties row:rows)
+				{
+					if(app.equals(row.getProperty("app")))
+					{
+						Properties projected=new Properties();
+						for(String key:row.stringPropertyNames())
+						{
+							if(columns==null || columns.contains(key) || "app".equals(key) || "widget_id".equals(key))
+							{
+								projected.put(key, row.getProperty(key));
+							}
+						}
+						expected.add(projected);
+					}
+				}
+				assertEquals("App "+app, expected, partitions.read(app));
+			}
+			assertEquals(0, partitions.read("missing").size());
+		}
+		finally
+		{
+			if(partitions!=null)
+			{
+				partitions.delete();
+			}
+			folder.delete();
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,223 @@
+package org.example;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Log lines appended to files by one background writer.
+ * A log call only adds the line to a bounded queue and waits while the queue is full, so the lines of a file stay in order.
+ * Lines are only written directly by the caller once the log is closed (or the writer has stopped).
+ * The writer keeps one buffered writer open per file and flushes them when the queue is empty.
+ */
+public class AsyncLog {
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final int BATCH_SIZE = 512;
+    private static final long OFFER_TIMEOUT_MILLIS = 1000;
+    private static AsyncLog instance = null;
+
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Map<String, Writer> writers = new HashMap<>();
+    private final Thread writerThread;
+    private volatile boolean closed = false;
+
+    private AsyncLog() {
+        writerThread = new Thread(this::writeEntries, "similo-log");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * @return The shared log (flushed and closed when the JVM shuts down)
+     */
+    public static synchronized AsyncLog getInstance() {
+        if (instance == null) {
+            instance = new AsyncLog();
+            Runtime.getRuntime().addShutdownHook(new Thread(instance::close, "similo-log-close"));
+        }
+        return instance;
+    }
+
+    /**
+     * Append a line to a file (in the background)
+     *
+     * @param filename Path to the file
+     * @param text     The line (without line break)
+     */
+    public static void writeLine(String filename, String text) {
+        getInstance().append(filename, text + "\r\n");
+    }
+
+    /**
+     * Append text to a file (in the background)
+     *
+     * @param filename Path to the file
+     * @param text     The text
+     */
+    public void append(String filename, String text) {
+        Entry entry = new Entry(filename, text, null);
+        boolean interrupted = false;
+        try {
+            while (!closed && writerThread.isAlive()) {
+                try {
+                    // Wait for the writer (a direct write could be mixed with the lines it writes)
+                    if (queue.offer(entry, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                        if (closed && !writerThread.isAlive() && queue.remove(entry)) {
+                            // Queued after the log was closed
+                            break;
+                        }
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        writeDirect(filename, text);
+    }
+
+    /**
+     * Wait until all queued lines are written to file
+     *
+     * @return true if written
+     */
+    public boolean flush() {
+        if (closed || !writerThread.isAlive()) {
+            return false;
+        }
+        CountDownLatch written = new CountDownLatch(1);
+        try {
+            if (!queue.offer(new Entry(null, null, written), 30, TimeUnit.SECONDS)) {
+                return false;
+            }
+            return written.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Write all queued lines and close the files
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        writerThread.interrupt();
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!writerThread.isAlive()) {
+            // Lines queued while closing
+            List<Entry> batch = new ArrayList<>();
+            queue.drainTo(batch);
+            for (Entry entry : batch) {
+                if (entry.written != null) {
+                    entry.written.countDown();
+                } else {
+                    writeDirect(entry.filename, entry.text);
+                }
+            }
+        }
+    }
+
+    private void writeEntries() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        while (!closed) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, BATCH_SIZE - 1);
+            for (Entry entry : batch) {
+                write(entry);
+            }
+            batch.clear();
+            if (queue.isEmpty()) {
+                flushWriters();
+            }
+        }
+        queue.drainTo(batch);
+        for (Entry entry : batch) {
+            write(entry);
+        }
+        flushWriters();
+        for (Writer writer : writers.values()) {
+            try {
+                writer.close();
+            } catch (Exception e) {
+            }
+        }
+        writers.clear();
+    }
+
+    private void write(Entry entry) {
+        if (entry.written != null) {
+            // Flush request
+            flushWriters();
+            entry.written.countDown();
+            return;
+        }
+        try {
+            Writer writer = writers.get(entry.filename);
+            if (writer == null) {
+                // Same encoding as String.getBytes()
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(entry.filename, true)));
+                writers.put(entry.filename, writer);
+            }
+            writer.write(entry.text);
+        } catch (Exception e) {
+        }
+    }
+
+    /**
+     * Append text to a file on the calling thread
+     */
+    private synchronized void writeDirect(String filename, String text) {
+        // Same encoding as String.getBytes()
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(filename, true))) {
+            writer.write(text);
+        } catch (Exception e) {
+        }
+    }
+
+    private void flushWriters() {
+        for (Writer writer : writers.values()) {
+            try {
+                writer.flush();
+            } catch (Exception e) {
+            }
+        }
+    }
+
+    private static class Entry {
+        private final String filename;
+        private final String text;
+        private final CountDownLatch written;
+
+        private Entry(String filename, String text, CountDownLatch written) {
+            this.filename = filename;
+            this.text = text;
+            this.written = written;
+        }
+    }
+}
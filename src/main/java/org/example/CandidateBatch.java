@@ -0,0 +1,236 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Candidates stored attribute by attribute (struct of arrays) for scoring with Similo.scoreBatch.
+ * Equality attributes are stored as dictionary ids, text attributes as lower case chars with offsets,
+ * numbers and locations as ints. Locators are only created for the candidates returned by topLocators.
+ */
+public class CandidateBatch {
+    private static final String[] ATTRIBUTES = Similo.LOCATORS;
+    private static final int[] SIMILARITY_FUNCTION = Similo.SIMILARITY_FUNCTION;
+
+    private final int size;
+    private final IntFunction<Locator> materializer;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+
+    // Per attribute and candidate
+    final boolean[][] present = new boolean[ATTRIBUTES.length][];
+    // Equality and text attributes: alternatives (separated by " || ") of candidate c are altStart[c] to altStart[c + 1]
+    final int[][] altStart = new int[ATTRIBUTES.length][];
+    final int[][] altIds = new int[ATTRIBUTES.length][];
+    // Text attributes: chars (lower case) of alternative a are altChars[charStart[a]] to altChars[charStart[a + 1]]
+    final int[][] charStart = new int[ATTRIBUTES.length][];
+    final char[][] altChars = new char[ATTRIBUTES.length][];
+    final int[][] altLength = new int[ATTRIBUTES.length][];
+    // Numbers
+    final int[][] intValues = new int[ATTRIBUTES.length][];
+    // Location (x,y)
+    final int[] locationX;
+    final int[] locationY;
+    final boolean[] locationValid;
+    // Neighbor text
+    final String[][] texts = new String[ATTRIBUTES.length][];
+
+    /**
+     * Create a batch from locators
+     *
+     * @param locators The candidates
+     */
+    public CandidateBatch(List<Locator> locators) {
+        this(locators.size(), (row, slot) -> locators.get(row).getMetadata(slot), locators::get);
+    }
+
+    private CandidateBatch(int size, BiFunction<Integer, Integer, String> value, IntFunction<Locator> materializer) {
+        this.size = size;
+        this.materializer = materializer;
+        int locationIndex = -1;
+        for (int index = 0; index < ATTRIBUTES.length; index++) {
+            int slot = Locator.slotOf(ATTRIBUTES[index]);
+            String[] values = new String[size];
+            boolean[] attributePresent = new boolean[size];
+            for (int row = 0; row < size; row++) {
+                values[row] = value.apply(row, slot);
+                attributePresent[row] = values[row] != null;
+            }
+            present[index] = attributePresent;
+            int similarityFunction = SIMILARITY_FUNCTION[index];
+            if (similarityFunction == 0 || similarityFunction == 1) {
+                addAlternatives(index, values, similarityFunction == 1);
+            } else if (similarityFunction == 2) {
+                int[] numbers = new int[size];
+                for (int row = 0; row < size; row++) {
+                    numbers[row] = values[row] != null ? string2Int(values[row]) : 0;
+                }
+                intValues[index] = numbers;
+            } else if (similarityFunction == 3) {
+                locationIndex = index;
+                texts[index] = values;
+            } else {
+                texts[index] = values;
+            }
+        }
+
+        locationX = new int[size];
+        locationY = new int[size];
+        locationValid = new boolean[size];
+        if (locationIndex >= 0) {
+            String[] locations = texts[locationIndex];
+            for (int row = 0; row < size; row++) {
+                if (locations[row] != null) {
+                    String[] split = locations[row].split(Pattern.quote(","));
+                    if (split.length == 2) {
+                        locationX[row] = string2Int(split[0]);
+                        locationY[row] = string2Int(split[1]);
+                        locationValid[row] = true;
+                    }
+                }
+            }
+            texts[locationIndex] = null;
+        }
+    }
+
+    /**
+     * Create a batch from rows of any kind
+     *
+     * @param rows         The candidates
+     * @param value        Get the value of a metadata key (or null) from a row
+     * @param materializer Create a locator from a row
+     * @return The batch
+     */
+    public static <T> CandidateBatch fromRows(List<T> rows, BiFunction<T, String, String> value, Function<T, Locator> materializer) {
+        return new CandidateBatch(rows.size(), (row, slot) -> value.apply(rows.get(row), Locator.getSlotKey(slot)), row -> materializer.apply(rows.get(row)));
+    }
+
+    /**
+     * @return Number of candidates
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the locator of a candidate
+     *
+     * @param row Index of the candidate
+     * @return The locator
+     */
+    public Locator getLocator(int row) {
+        return materializer.apply(row);
+    }
+
+    /**
+     * Get the best candidates, in the same order as Similo sorts locators
+     *
+     * @param scores Scores from Similo.scoreBatch
+     * @param k      Max number of locators
+     * @return The locators with the highest scores (with the score set)
+     */
+    public List<Locator> topLocators(double[] scores, int k) {
+        List<Integer> rows = new ArrayList<>(size);
+        for (int row = 0; row < size; row++) {
+            rows.add(row);
+        }
+        // Same as Locator.compareTo
+        Collections.sort(rows, (row1, row2) -> (int) (scores[row2] * 1000 - scores[row1] * 1000));
+        List<Locator> locators = new ArrayList<>();
+        for (int i = 0; i < Math.min(k, size); i++) {
+            int row = rows.get(i);
+            Locator locator = getLocator(row);
+            locator.setScore(scores[row]);
+            locators.add(locator);
+        }
+        return locators;
+    }
+
+    /**
+     * Get the dictionary id of a value (case insensitive)
+     *
+     * @return The id or -1 if no candidate has the value
+     */
+    int idOf(String value) {
+        Integer id = dictionary.get(caseInsensitive(value));
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Same equality as String.equalsIgnoreCase
+     */
+    static String caseInsensitive(String value) {
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    private void addAlternatives(int index, String[] values, boolean addChars) {
+        int[] starts = new int[size + 1];
+        int[] ids = new int[size];
+        int[] charStarts = addChars ? new int[size + 1] : null;
+        int[] lengths = addChars ? new int[size] : null;
+        char[] chars = addChars ? new char[64] : null;
+        int noAlternatives = 0;
+        int noChars = 0;
+        for (int row = 0; row < size; row++) {
+            starts[row] = noAlternatives;
+            if (values[row] == null) {
+                continue;
+            }
+            for (String alternative : values[row].split(Pattern.quote(" || "))) {
+                if (noAlternatives == ids.length) {
+                    ids = Arrays.copyOf(ids, Math.max(ids.length * 2, 8));
+                    if (addChars) {
+                        lengths = Arrays.copyOf(lengths, ids.length);
+                        charStarts = Arrays.copyOf(charStarts, ids.length + 1);
+                    }
+                }
+                String key = caseInsensitive(alternative);
+                Integer id = dictionary.get(key);
+                if (id == null) {
+                    id = dictionary.size();
+                    dictionary.put(key, id);
+                }
+                ids[noAlternatives] = id;
+                if (addChars) {
+                    String lowerCase = alternative.toLowerCase();
+                    lengths[noAlternatives] = alternative.length();
+                    charStarts[noAlternatives] = noChars;
+                    if (noChars + lowerCase.length() > chars.length) {
+                        chars = Arrays.copyOf(chars, Math.max(chars.length * 2, noChars + lowerCase.length()));
+                    }
+                    lowerCase.getChars(0, lowerCase.length(), chars, noChars);
+                    noChars += lowerCase.length();
+                }
+                noAlternatives++;
+            }
+        }
+        starts[size] = noAlternatives;
+        altStart[index] = starts;
+        altIds[index] = ids;
+        if (addChars) {
+            charStarts[noAlternatives] = noChars;
+            charStart[index] = charStarts;
+            altLength[index] = lengths;
+            altChars[index] = chars;
+        }
+    }
+
+    private static int string2Int(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+}
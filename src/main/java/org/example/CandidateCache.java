@@ -0,0 +1,62 @@
+package org.example;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Candidate batches of the apps in a dataset, created once per app and shared (a batch is read only).
+ * Score a batch with Similo.scoreBatch - the scores are returned in a new array so the candidates are not changed.
+ */
+public class CandidateCache
+{
+	private final SimiloLLM similoLLM;
+	private final ElementDataset data;
+	private final int maxApps;
+	private final Map<String, CandidateBatch> batches;
+
+	public CandidateCache(SimiloLLM similoLLM, ElementDataset data)
+	{
+		this(similoLLM, data, 16);
+	}
+
+	/**
+	 * @param similoLLM Creates the candidates
+	 * @param data The dataset with the candidates
+	 * @param maxApps Max number of apps to keep batches for (the least recently used are removed)
+	 */
+	public CandidateCache(SimiloLLM similoLLM, ElementDataset data, int maxApps)
+	{
+		this.similoLLM=similoLLM;
+		this.data=data;
+		this.maxApps=maxApps;
+		batches=new LinkedHashMap<String, CandidateBatch>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CandidateBatch> eldest)
+			{
+				return size()>CandidateCache.this.maxApps;
+			}
+		};
+	}
+
+	/**
+	 * Get the candidates of an app
+	 * @param app The app
+	 * @return The candidates (created the first time)
+	 */
+	public synchronized CandidateBatch getCandidates(String app)
+	{
+		CandidateBatch batch=batches.get(app);
+		if(batch==null)
+		{
+			batch=similoLLM.toCandidateBatch(data.getByApp(app));
+			batches.put(app, batch);
+		}
+		return batch;
+	}
+
+	public synchronized void clear()
+	{
+		batches.clear();
+	}
+}
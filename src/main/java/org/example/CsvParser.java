@@ -0,0 +1,566 @@
+package org.example;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Parses a CSV file in one pass, char by char, into rows of any type.
+ * Same rules as CSVReader: each " toggles protection (a doubled "" inside
+ * protection is one "), line breaks inside protection belong to the value
+ * (as \n), values are trimmed and blank lines are skipped.
+ */
+public class CsvParser<T> implements Iterator<T>
+{
+	private static final int BUFFER_SIZE = 8192;
+	private static final char QUOTE = '\"';
+
+	/**
+	 * Creates a row from the values of a line.
+	 */
+	public interface RowFactory<T>
+	{
+		/**
+		 * @param header
+		 *          The column names
+		 * @param values
+		 *          The values of the line (only valid during the call)
+		 * @return The row
+		 */
+		T createRow(List<String> header, List<String> values);
+	}
+
+	private Reader in;
+
+	private final RowFactory<T> rowFactory;
+
+	private final char[] buffer = new char[BUFFER_SIZE];
+
+	private int position = 0;
+
+	private int limit = 0;
+
+	private boolean skipLineFeed = false;
+
+	private final StringBuilder field = new StringBuilder();
+
+	private boolean protection = false;
+
+	private char lastChar = ' ';
+
+	private boolean[] projection = null;
+
+	private int fieldIndex = 0;
+
+	private boolean skipField = false;
+
+	private List<String> headerLine = null;
+
+	private List<String> nextLine = new ArrayList<String>();
+
+	private boolean hasNextLine = false;
+
+	private char columnSeparator = ',';
+
+	/**
+	 * Parse a CSV file.
+	 * 
+	 * @param filename
+	 *          Filename to parse (a resource)
+	 * @param rowFactory
+	 *          Creates the rows
+	 * @throws IOException
+	 *           Exception
+	 */
+	public CsvParser(String filename, RowFactory<T> rowFactory) throws IOException
+	{
+		this(filename, rowFactory, null);
+	}
+
+	/**
+	 * Parse the columns of a CSV file.
+	 * 
+	 * @param filename
+	 *          Filename to parse (a resource)
+	 * @param rowFactory
+	 *          Creates the rows
+	 * @param columns
+	 *          The columns to read (other values are null) or null for all
+	 * @throws IOException
+	 *           Exception
+	 */
+	public CsvParser(String filename, RowFactory<T> rowFactory, Collection<String> columns) throws IOException
+	{
+		this(new File(Objects.requireNonNull(CsvParser.class.getClassLoader().getResource(filename)).getFile()), rowFactory, columns);
+	}
+
+	/**
+	 * Parse a CSV file.
+	 * 
+	 * @param file
+	 *          File to parse (Cp1252)
+	 * @param rowFactory
+	 *          Creates the rows
+	 * @throws IOException
+	 *           Exception
+	 */
+	public CsvParser(File file, RowFactory<T> rowFactory) throws IOException
+	{
+		this(file, rowFactory, null);
+	}
+
+	/**
+	 * Parse the columns of a CSV file.
+	 * 
+	 * @param file
+	 *          File to parse (Cp1252)
+	 * @param rowFactory
+	 *          Creates the rows
+	 * @param columns
+	 *          The columns to read (other values are null) or null for all
+	 * @throws IOException
+	 *           Exception
+	 */
+	public CsvParser(File file, RowFactory<T> rowFactory, Collection<String> columns) throws IOException
+	{
+		this(new InputStreamReader(new FileInputStream(file), "Cp1252"), rowFactory, columns);
+	}
+
+	/**
+	 * Parse a CSV file.
+	 * 
+	 * @param in
+	 *          File to parse
+	 * @param rowFactory
+	 *          Creates the rows
+	 * @throws IOException
+	 *           Exception
+	 */
+	public CsvParser(Reader in, RowFactory<T> rowFactory) throws IOException
+	{
+		this(in, rowFactory, (Collection<String>) null);
+	}
+
+	/**
+	 * Parse the columns of a CSV file. The values of other columns are skipped without creating strings.
+	 * 
+	 * @param in
+	 *          File to parse
+	 * @param rowFactory
+	 *          Creates the rows
+	 * @param columns
+	 *          The columns to read (other values are null) or null for all
+	 * @throws IOException
+	 *           Exception
+	 */
+	public CsvParser(Reader in, RowFactory<T> rowFactory, Collection<String> columns) throws IOException
+	{
+		this.in = in;
+		this.rowFactory = rowFactory;
+		String header = readHeader();
+		if (header == null)
+		{
+			close();
+			throw new IOException("File does not contain a header line");
+		}
+		columnSeparator = findColumnSeparator(header);
+		List<String> values = new ArrayList<String>();
+		for (int i = 0; i < header.length(); i++)
+		{
+			addChar(header.charAt(i), values);
+		}
+		addField(values);
+		headerLine = values;
+		if (columns != null)
+		{
+			projection = new boolean[headerLine.size()];
+			for (int i = 0; i < projection.length; i++)
+			{
+				projection[i] = columns.contains(headerLine.get(i));
+			}
+		}
+		readNext();
+	}
+
+	/**
+	 * Parse a part of a CSV file without header (starting at a new line).
+	 * 
+	 * @param in
+	 *          The part to parse
+	 * @param rowFactory
+	 *          Creates the rows
+	 * @param headerLine
+	 *          The header of the file
+	 * @param columnSeparator
+	 *          The column separator of the file
+	 */
+	CsvParser(Reader in, RowFactory<T> rowFactory, List<String> headerLine, char columnSeparator)
+	{
+		this.in = in;
+		this.rowFactory = rowFactory;
+		this.headerLine = headerLine;
+		this.columnSeparator = columnSeparator;
+		readNext();
+	}
+
+	/**
+	 * Get the column separator from the header (the first of , ; tab | : in the header)
+	 */
+	static char findColumnSeparator(String header)
+	{
+		if(header.indexOf(',')>=0)
+		{
+			return ',';
+		}
+		if(header.indexOf(';')>=0)
+		{
+			return ';';
+		}
+		if(header.indexOf('\t')>=0)
+		{
+			return '\t';
+		}
+		if(header.indexOf('|')>=0)
+		{
+			return '|';
+		}
+		if(header.indexOf(':')>=0)
+		{
+			return ':';
+		}
+		return ',';
+	}
+
+	/**
+	 * Check if there is a next line.
+	 * 
+	 * @return true if has a new line or false if not
+	 */
+	public boolean hasNext()
+	{
+		return hasNextLine;
+	}
+
+	/**
+	 * Read next line.
+	 * 
+	 * @return The row created from the line
+	 * @throws NoSuchElementException
+	 *           Exception
+	 */
+	public T next() throws NoSuchElementException
+	{
+		if (!hasNextLine)
+		{
+			throw new NoSuchElementException("Read past end of file");
+		}
+		if (nextLine.size() != headerLine.size())
+		{
+			// Not the same number of columns as header
+			throw new NoSuchElementException("Not the same no of columns as the header");
+		}
+		T row = rowFactory.createRow(headerLine, nextLine);
+		readNext();
+		return row;
+	}
+
+	/**
+	 * Not supported.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *           Exception
+	 */
+	public void remove() throws UnsupportedOperationException
+	{
+		throw new UnsupportedOperationException("Not supported");
+	}
+
+	/**
+	 * The column separator used (comma by default).
+	 * 
+	 * @return The current column separator.
+	 */
+	public char getColumnSeparator()
+	{
+		return columnSeparator;
+	}
+
+	public List<String> getHeaderLine()
+	{
+		return headerLine;
+	}
+
+	/**
+	 * Stop reading and close the file.
+	 */
+	public void close()
+	{
+		hasNextLine = false;
+		if (in != null)
+		{
+			try
+			{
+				in.close();
+			}
+			catch (IOException e)
+			{
+			}
+			in = null;
+		}
+	}
+
+	/**
+	 * Read the next non blank line into nextLine.
+	 */
+	private void readNext()
+	{
+		try
+		{
+			hasNextLine = readLine(nextLine);
+		}
+		catch (IOException e)
+		{
+			hasNextLine = false;
+		}
+		if (!hasNextLine)
+		{
+			close();
+		}
+	}
+
+	/**
+	 * Split the next non blank line into values.
+	 * 
+	 * @return false if end of file
+	 */
+	private boolean readLine(List<String> values) throws IOException
+	{
+		while (true)
+		{
+			values.clear();
+			field.setLength(0);
+			protection = false;
+			lastChar = ' ';
+			startField(0);
+			boolean blank = true;
+			boolean empty = true;
+			boolean newLine = false;
+			while (true)
+			{
+				int c = read();
+				if (c < 0)
+				{
+					if (empty)
+					{
+						return false;
+					}
+					break;
+				}
+				if (c == '\n' || c == '\r')
+				{
+					if (!protection)
+					{
+						break;
+					}
+					if (newLine)
+					{
+						addChar('\n', values);
+					}
+					// Added before the next char (not at end of file)
+					newLine = true;
+					empty = false;
+					continue;
+				}
+				if (newLine)
+				{
+					addChar('\n', values);
+					newLine = false;
+				}
+				if (c > ' ')
+				{
+					blank = false;
+				}
+				empty = false;
+				addChar((char) c, values);
+			}
+			if (!blank)
+			{
+				addField(values);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Add a char of a line (same rules as CSVReader.splitString).
+	 */
+	private void addChar(char c, List<String> values)
+	{
+		if (!protection && c == columnSeparator)
+		{
+			addField(values);
+		}
+		else if (c == QUOTE)
+		{
+			// Toggle protection
+			protection = !protection;
+			if (lastChar == QUOTE)
+			{
+				// Add double protection as one protection char
+				if (!skipField)
+				{
+					field.append(c);
+				}
+				// Clear c to avoid adding protection again
+				c = ' ';
+			}
+		}
+		else if (!skipField)
+		{
+			field.append(c);
+		}
+		// Remember last char
+		lastChar = c;
+	}
+
+	/**
+	 * Add the trimmed field to values (null if not in the projection).
+	 */
+	private void addField(List<String> values)
+	{
+		if (skipField)
+		{
+			values.add(null);
+			startField(fieldIndex + 1);
+			return;
+		}
+		int start = 0;
+		int end = field.length();
+		while (start < end && field.charAt(start) <= ' ')
+		{
+			start++;
+		}
+		while (end > start && field.charAt(end - 1) <= ' ')
+		{
+			end--;
+		}
+		values.add(field.substring(start, end));
+		field.setLength(0);
+		startField(fieldIndex + 1);
+	}
+
+	private void startField(int index)
+	{
+		fieldIndex = index;
+		skipField = projection != null && (index >= projection.length || !projection[index]);
+	}
+
+	/**
+	 * Read the first non blank line as it is (with \n between lines inside protection).
+	 */
+	private String readHeader() throws IOException
+	{
+		StringBuilder header = new StringBuilder();
+		while (true)
+		{
+			header.setLength(0);
+			boolean headerProtection = false;
+			boolean blank = true;
+			boolean empty = true;
+			boolean newLine = false;
+			while (true)
+			{
+				int c = read();
+				if (c < 0)
+				{
+					if (empty)
+					{
+						return null;
+					}
+					break;
+				}
+				if (c == '\n' || c == '\r')
+				{
+					if (!headerProtection)
+					{
+						break;
+					}
+					if (newLine)
+					{
+						header.append('\n');
+					}
+					newLine = true;
+					empty = false;
+					continue;
+				}
+				if (newLine)
+				{
+					header.append('\n');
+					newLine = false;
+				}
+				if (c == QUOTE)
+				{
+					headerProtection = !headerProtection;
+				}
+				if (c > ' ')
+				{
+					blank = false;
+				}
+				empty = false;
+				header.append((char) c);
+			}
+			if (!blank)
+			{
+				return header.toString();
+			}
+		}
+	}
+
+	/**
+	 * Read a char (a \r\n line break is returned as \r).
+	 * 
+	 * @return The char or -1 if end of file
+	 */
+	private int read() throws IOException
+	{
+		while (true)
+		{
+			if (position == limit)
+			{
+				if (in == null)
+				{
+					return -1;
+				}
+				limit = in.read(buffer, 0, BUFFER_SIZE);
+				position = 0;
+				if (limit <= 0)
+				{
+					limit = 0;
+					return -1;
+				}
+			}
+			char c = buffer[position++];
+			if (skipLineFeed)
+			{
+				skipLineFeed = false;
+				if (c == '\n')
+				{
+					continue;
+				}
+			}
+			if (c == '\r')
+			{
+				skipLineFeed = true;
+			}
+			return c;
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package org.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+
+import org.junit.Test;
+
+/**
+ * CsvParser (through CSVReader) reads the same values as the previous line by line CSVReader
+ */
+public class CsvParserTest
+{
+	@Test
+	public void quotedSeparators() throws IOException
+	{
+		List<Properties> rows=read("a,b,c\r\n\"x,y\",2,\" 3 \"\r\n");
+		assertEquals(1, rows.size());
+		assertEquals(properties("a", "x,y", "b", "2", "c", "3"), rows.get(0));
+	}
+
+	@Test
+	public void doubledQuotes() throws IOException
+	{
+		List<Properties> rows=read("a,b\n\"say \"\"hi\"\"\",x\n\"\"\"q\",\"\"\n");
+		assertEquals(2, rows.size());
+		assertEquals(properties("a", "say \"hi\"", "b", "x"), rows.get(0));
+		// A quoted "" (protection on and off) is read as one "
+		assertEquals(properties("a", "\"q", "b", "\""), rows.get(1));
+	}
+
+	@Test
+	public void lineBreaksInQuotes() throws IOException
+	{
+		List<Properties> rows=read("a,b\r\n\"line1\r\nline2\",x\r\n\"l1\nl2\",\"l3\rl4\"\n\"e\r\n\r\nf\",y");
+		assertEquals(3, rows.size());
+		assertEquals(properties("a", "line1\nline2", "b", "x"), rows.get(0));
+		assertEquals(properties("a", "l1\nl2", "b", "l3\nl4"), rows.get(1));
+		assertEquals(properties("a", "e\n\nf", "b", "y"), rows.get(2));
+	}
+
+	@Test
+	public void blankLines() throws IOException
+	{
+		List<Properties> rows=read("\r\n\na,b\r\n\r\n1,2\r\n   \r\n\n3,4\r\n\r\n");
+		assertEquals(2, rows.size());
+		assertEquals(properties("a", "1", "b", "2"), rows.get(0));
+		assertEquals(properties("a", "3", "b", "4"), rows.get(1));
+	}
+
+	@Test
+	public void columnSeparator() throws IOException
+	{
+		CSVReader csvReader=new CSVReader(new StringReader("a;b\n1;\"2;3\"\n"));
+		assertEquals(';', csvReader.getColumnSeparator());
+		assertEquals(properties("a", "1", "b", "2;3"), csvReader.next());
+
+		csvReader=new CSVReader(new StringReader("a\tb\nx\ty\n"));
+		assertEquals('\t', csvReader.getColumnSeparator());
+		assertEquals(properties("a", "x", "b", "y"), csvReader.next());
+	}
+
+	@Test
+	public void wrongNumberOfColumns() throws IOException
+	{
+		CSVReader csvReader=new CSVReader(new StringReader("a,b\n1,2,3\n"));
+		assertTrue(csvReader.hasNext());
+		try
+		{
+			csvReader.next();
+			fail("Not the same no of columns as the header");
+		}
+		catch(NoSuchElementException e)
+		{
+			// Expected
+		}
+	}
+
+	@Test
+	public void noHeader()
+	{
+		try
+		{
+			new CSVReader(new StringReader("\r\n  \n"));
+			fail("File does not contain a header line");
+		}
+		catch(IOException e)
+		{
+			// Expected
+		}
+	}
+
+	@Test
+	public void projection() throws IOException
+	{
+		String csv="a,b,c,d\r\n"
+				+"1,\"x,\"\"y\"\"\",\"line\r\nbreak\",4\r\n"
+				+"\r\n"
+				+"\"5\",,\"\"\"\",\" 8 \"\n";
+		List<String> columns=Arrays.asList("b", "d", "missing");
+		List<Properties> expected=new ArrayList<Properties>();
+		for(Properties row:read(csv))
+		{
+			Properties projected=new Properties();
+			for(String column:columns)
+			{
+				if(row.containsKey(column))
+				{
+					projected.put(column, row.get(column));
+				}
+			}
+			expected.add(projected);
+		}
+
+		List<Properties> rows=new ArrayList<Properties>();
+		CSVReader csvReader=new CSVReader(new StringReader(csv), columns);
+		while(csvReader.hasNext())
+		{
+			rows.add(csvReader.next());
+		}
+		assertEquals(2, rows.size());
+		assertEquals(expected, rows);
+		assertEquals(properties("b", "x,\"y\"", "d", "4"), rows.get(0));
+	}
+
+	static List<Properties> read(String csv) throws IOException
+	{
+		List<Properties> rows=new ArrayList<Properties>();
+		CSVReader csvReader=new CSVReader(new StringReader(csv));
+		while(csvReader.hasNext())
+		{
+			rows.add(csvReader.next());
+		}
+		return rows;
+	}
+
+	/**
+	 * @param keyValues Keys and values
+	 */
+	static Properties properties(String... keyValues)
+	{
+		Properties properties=new Properties();
+		for(int i=0; i<keyValues.length; i+=2)
+		{
+			properties.put(keyValues[i], keyValues[i+1]);
+		}
+		return properties;
+	}
+}
@@ -0,0 +1,488 @@
+package org.example;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A CSV file from SimiloLLM.readCSV stored in a binary column format (a .snapshot file next to the CSV file).
+ * The snapshot is memory mapped and values are read from the mapped file when they are used.
+ * It is created again when the size or last modified time of the CSV file has changed.
+ * <p>
+ * Format (big endian ints): header, column names, the string id of each value column by column,
+ * rows of each app (app directory), string table (offsets and UTF-8 bytes)
+ */
+public class DatasetSnapshot
+{
+	private static final int MAGIC=0x53534E50;
+	private static final int VERSION=1;
+	private static final int HEADER_SIZE=40;
+	private static final String SNAPSHOT_SUFFIX=".snapshot";
+
+	private final MappedByteBuffer mapped;
+	private final int noColumns;
+	private final int noRows;
+	private final int noStrings;
+	private final int noApps;
+	private final int cellsPosition;
+	private final int appsPosition;
+	private final int stringOffsetsPosition;
+	private final int stringsPosition;
+	private final String[] columns;
+	private final Map<String, Integer> columnIndex=new HashMap<String, Integer>();
+	private final Map<String, Integer> appIndex=new HashMap<String, Integer>();
+	private final String[] strings;
+
+	private DatasetSnapshot(MappedByteBuffer mapped)
+	{
+		this.mapped=mapped;
+		noColumns=mapped.getInt(24);
+		noRows=mapped.getInt(28);
+		noStrings=mapped.getInt(32);
+		noApps=mapped.getInt(36);
+		cellsPosition=HEADER_SIZE+4*noColumns;
+		appsPosition=cellsPosition+4*noColumns*noRows;
+		// Rows in the app directory (rows with an app)
+		int noAppRows=mapped.getInt(appsPosition+8*noApps);
+		stringOffsetsPosition=appsPosition+4*(noApps+noApps+1+noAppRows);
+		stringsPosition=stringOffsetsPosition+4*(noStrings+1);
+		strings=new String[noStrings];
+		columns=new String[noColumns];
+		for(int i=0; i<noColumns; i++)
+		{
+			columns[i]=getString(mapped.getInt(HEADER_SIZE+4*i));
+			columnIndex.put(columns[i], i);
+		}
+		for(int i=0; i<noApps; i++)
+		{
+			appIndex.put(getString(mapped.getInt(appsPosition+4*i)), i);
+		}
+	}
+
+	/**
+	 * Open the snapshot of a CSV file (created if missing or older than the CSV file)
+	 * @param csvFile The CSV file
+	 * @return The snapshot or null if the CSV file can't be read
+	 */
+	public static DatasetSnapshot open(File csvFile)
+	{
+		File snapshotFile=getSnapshotFile(csvFile);
+		DatasetSnapshot snapshot=load(snapshotFile, csvFile);
+		if(snapshot!=null)
+		{
+			return snapshot;
+		}
+		if(!create(csvFile, snapshotFile))
+		{
+			return null;
+		}
+		return load(snapshotFile, csvFile);
+	}
+
+	/**
+	 * Convert a CSV file to a snapshot file
+	 * @param csvFile The CSV file
+	 * @param snapshotFile The snapshot file (replaced)
+	 * @return true if created
+	 */
+	public static boolean create(File csvFile, File snapshotFile)
+	{
+		long size=csvFile.length();
+		long lastModified=csvFile.lastModified();
+		List<String> header;
+		List<List<String>> rows=new ArrayList<List<String>>();
+		try
+		{
+			CSVReader csvReader=new CSVReader(csvFile);
+			header=csvReader.getHeaderLine();
+			while(csvReader.hasNext())
+			{
+				Properties row=csvReader.next();
+				List<String> values=new ArrayList<String>(header.size());
+				for(String column:header)
+				{
+					values.add(row.getProperty(column));
+				}
+				rows.add(values);
+			}
+		}
+		catch(Exception e)
+		{
+			return false;
+		}
+
+		// Columns in header order (the last one if a name is repeated) and without widget_id (the row number)
+		Map<String, Integer> headerIndex=indexOf(header);
+		List<String> columns=new ArrayList<String>(headerIndex.keySet());
+		columns.remove("widget_id");
+		Map<String, Integer> stringIds=new HashMap<String, Integer>();
+		List<String> strings=new ArrayList<String>();
+		int[] columnIds=new int[columns.size()];
+		int[][] cells=new int[columns.size()][rows.size()];
+		for(int column=0; column<columns.size(); column++)
+		{
+			columnIds[column]=stringId(columns.get(column), stringIds, strings);
+			int index=headerIndex.get(columns.get(column));
+			for(int row=0; row<rows.size(); row++)
+			{
+				cells[column][row]=stringId(rows.get(row).get(index), stringIds, strings);
+			}
+		}
+
+		// App directory
+		Map<String, List<Integer>> appRows=new LinkedHashMap<String, List<Integer>>();
+		Integer appColumn=headerIndex.get("app");
+		for(int row=0; row<rows.size(); row++)
+		{
+			String app=appColumn!=null ? rows.get(row).get(appColumn) : null;
+			if(app!=null)
+			{
+				List<Integer> list=appRows.get(app);
+				if(list==null)
+				{
+					list=new ArrayList<Integer>();
+					appRows.put(app, list);
+				}
+				list.add(row);
+			}
+		}
+		int noPartitionedRows=0;
+		for(List<Integer> list:appRows.values())
+		{
+			noPartitionedRows+=list.size();
+		}
+		int[] appIds=new int[appRows.size()];
+		int appNo=0;
+		for(String app:appRows.keySet())
+		{
+			appIds[appNo++]=stringId(app, stringIds, strings);
+		}
+
+		File tempFile=new File(snapshotFile.getPath()+".tmp");
+		try
+		{
+			DataOutputStream out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1<<16));
+			List<byte[]> stringBytes=new ArrayList<byte[]>(strings.size());
+			long noBytes=0;
+			for(String string:strings)
+			{
+				byte[] bytes=string.getBytes(StandardCharsets.UTF_8);
+				stringBytes.add(bytes);
+				noBytes+=bytes.length;
+			}
+			long fileSize=HEADER_SIZE+4L*columns.size()+4L*columns.size()*rows.size()+4L*(appIds.length*2+1+noPartitionedRows)+4L*(strings.size()+1)+noBytes;
+			if(fileSize>Integer.MAX_VALUE)
+			{
+				// Too large to map
+				out.close();
+				tempFile.delete();
+				return false;
+			}
+
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(size);
+			out.writeLong(lastModified);
+			out.writeInt(columns.size());
+			out.writeInt(rows.size());
+			out.writeInt(strings.size());
+			out.writeInt(appIds.length);
+			for(int columnId:columnIds)
+			{
+				out.writeInt(columnId);
+			}
+			for(int[] column:cells)
+			{
+				for(int cell:column)
+				{
+					out.writeInt(cell);
+				}
+			}
+			for(int appId:appIds)
+			{
+				out.writeInt(appId);
+			}
+			int start=0;
+			for(List<Integer> list:appRows.values())
+			{
+				out.writeInt(start);
+				start+=list.size();
+			}
+			out.writeInt(start);
+			for(List<Integer> list:appRows.values())
+			{
+				for(int row:list)
+				{
+					out.writeInt(row);
+				}
+			}
+			int offset=0;
+			for(byte[] bytes:stringBytes)
+			{
+				out.writeInt(offset);
+				offset+=bytes.length;
+			}
+			out.writeInt(offset);
+			for(byte[] bytes:stringBytes)
+			{
+				out.write(bytes);
+			}
+			out.close();
+			Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return true;
+		}
+		catch(Exception e)
+		{
+			tempFile.delete();
+			return false;
+		}
+	}
+
+	/**
+	 * @param csvFile The CSV file
+	 * @return The snapshot file of the CSV file
+	 */
+	public static File getSnapshotFile(File csvFile)
+	{
+		return new File(csvFile.getPath()+SNAPSHOT_SUFFIX);
+	}
+
+	/**
+	 * @return Number of rows
+	 */
+	public int size()
+	{
+		return noRows;
+	}
+
+	/**
+	 * @return The columns (without widget_id)
+	 */
+	public List<String> getColumns()
+	{
+		return Collections.unmodifiableList(Arrays.asList(columns));
+	}
+
+	/**
+	 * Get a value
+	 * @param row The row (same as widget_id)
+	 * @param column The column
+	 * @return The value or null if no such column
+	 */
+	public String getValue(int row, String column)
+	{
+		Integer index=columnIndex.get(column);
+		if(index==null)
+		{
+			return "widget_id".equals(column) ? ""+row : null;
+		}
+		return getString(getStringId(row, index));
+	}
+
+	/**
+	 * Get a value without creating a String
+	 * @param row The row (same as widget_id)
+	 * @param column The column
+	 * @return A read only view of the UTF-8 bytes in the mapped file or null if no such column
+	 */
+	public ByteBuffer getValueBytes(int row, String column)
+	{
+		Integer index=columnIndex.get(column);
+		if(index==null)
+		{
+			return null;
+		}
+		int id=getStringId(row, index);
+		int start=mapped.getInt(stringOffsetsPosition+4*id);
+		int end=mapped.getInt(stringOffsetsPosition+4*id+4);
+		ByteBuffer bytes=mapped.asReadOnlyBuffer();
+		bytes.position(stringsPosition+start);
+		bytes.limit(stringsPosition+end);
+		return bytes.slice();
+	}
+
+	/**
+	 * Get a row the same way as SimiloLLM.readCSV
+	 * @param row The row
+	 * @return The row (a new Properties) with widget_id
+	 */
+	public Properties getRow(int row)
+	{
+		Properties p=new Properties();
+		for(int column=0; column<noColumns; column++)
+		{
+			p.put(columns[column], getString(getStringId(row, column)));
+		}
+		p.put("widget_id", ""+row);
+		return p;
+	}
+
+	/**
+	 * @return All rows (same as SimiloLLM.readCSV)
+	 */
+	public List<Properties> getRows()
+	{
+		List<Properties> rows=new ArrayList<Properties>(noRows);
+		for(int row=0; row<noRows; row++)
+		{
+			rows.add(getRow(row));
+		}
+		return rows;
+	}
+
+	/**
+	 * @return The apps in the order they first appear
+	 */
+	public List<String> getApps()
+	{
+		List<String> apps=new ArrayList<String>(noApps);
+		for(int i=0; i<noApps; i++)
+		{
+			apps.add(getString(mapped.getInt(appsPosition+4*i)));
+		}
+		return apps;
+	}
+
+	/**
+	 * Get the row numbers of an app
+	 * @param app The app
+	 * @return The rows in file order (empty if not found)
+	 */
+	public int[] getAppRows(String app)
+	{
+		Integer index=appIndex.get(app);
+		if(index==null)
+		{
+			return new int[0];
+		}
+		int startsPosition=appsPosition+4*noApps;
+		int start=mapped.getInt(startsPosition+4*index);
+		int end=mapped.getInt(startsPosition+4*index+4);
+		int rowsPosition=startsPosition+4*(noApps+1);
+		int[] rows=new int[end-start];
+		for(int i=0; i<rows.length; i++)
+		{
+			rows[i]=mapped.getInt(rowsPosition+4*(start+i));
+		}
+		return rows;
+	}
+
+	/**
+	 * Get the rows of an app (same as SimiloLLM.getByApp)
+	 * @param app The app
+	 * @return The rows in file order
+	 */
+	public List<Properties> getByApp(String app)
+	{
+		int[] appRows=getAppRows(app);
+		List<Properties> rows=new ArrayList<Properties>(appRows.length);
+		for(int row:appRows)
+		{
+			rows.add(getRow(row));
+		}
+		return rows;
+	}
+
+	private int getStringId(int row, int column)
+	{
+		return mapped.getInt(cellsPosition+4*(column*noRows+row));
+	}
+
+	/**
+	 * Decoded once and shared by all rows with the same value
+	 */
+	private synchronized String getString(int id)
+	{
+		String string=strings[id];
+		if(string==null)
+		{
+			int start=mapped.getInt(stringOffsetsPosition+4*id);
+			int end=mapped.getInt(stringOffsetsPosition+4*id+4);
+			byte[] bytes=new byte[end-start];
+			ByteBuffer buffer=mapped.duplicate();
+			buffer.position(stringsPosition+start);
+			buffer.get(bytes);
+			string=new String(bytes, StandardCharsets.UTF_8);
+			strings[id]=string;
+		}
+		return string;
+	}
+
+	private static DatasetSnapshot load(File snapshotFile, File csvFile)
+	{
+		if(!snapshotFile.isFile())
+		{
+			return null;
+		}
+		try(RandomAccessFile file=new RandomAccessFile(snapshotFile, "r"))
+		{
+			FileChannel channel=file.getChannel();
+			if(channel.size()<HEADER_SIZE || channel.size()>Integer.MAX_VALUE)
+			{
+				return null;
+			}
+			// Check the header before the file is mapped (a mapped file can't be replaced on Windows until it is released)
+			ByteBuffer header=ByteBuffer.allocate(HEADER_SIZE);
+			while(header.hasRemaining())
+			{
+				if(channel.read(header, header.position())<0)
+				{
+					return null;
+				}
+			}
+			if(header.getInt(0)!=MAGIC || header.getInt(4)!=VERSION
+				|| header.getLong(8)!=csvFile.length() || header.getLong(16)!=csvFile.lastModified())
+			{
+				// Old snapshot
+				return null;
+			}
+			// The mapping is valid after the file is closed
+			MappedByteBuffer mapped=channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new DatasetSnapshot(mapped);
+		}
+		catch(Exception e)
+		{
+			return null;
+		}
+	}
+
+	private static Map<String, Integer> indexOf(List<String> header)
+	{
+		Map<String, Integer> index=new LinkedHashMap<String, Integer>();
+		for(int i=0; i<header.size(); i++)
+		{
+			// Same as Properties.put - the last column with a name is used
+			index.remove(header.get(i));
+			index.put(header.get(i), i);
+		}
+		return index;
+	}
+
+	private static int stringId(String value, Map<String, Integer> stringIds, List<String> strings)
+	{
+		Integer id=stringIds.get(value);
+		if(id==null)
+		{
+			id=strings.size();
+			stringIds.put(value, id);
+			strings.add(value);
+		}
+		return id;
+	}
+}
@@ -0,0 +1,103 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * Rows from SimiloLLM.readCSV indexed by app and by app and xpath (each alternative separated by " || ").
+ * Gives the same results as SimiloLLM.getByXpath and getByApp without scanning all rows.
+ */
+public class ElementDataset
+{
+	private final List<Properties> rows;
+	private final Map<String, Properties> rowByXpath=new HashMap<String, Properties>();
+	private final Map<String, List<Properties>> rowsByApp=new HashMap<String, List<Properties>>();
+
+	public ElementDataset(List<Properties> rows)
+	{
+		this.rows=rows;
+		for(Properties row:rows)
+		{
+			String app=(String)row.get("app");
+			if(app==null)
+			{
+				continue;
+			}
+			List<Properties> appRows=rowsByApp.get(app);
+			if(appRows==null)
+			{
+				appRows=new ArrayList<Properties>();
+				rowsByApp.put(app, appRows);
+			}
+			appRows.add(row);
+
+			String xpath=(String)row.get("xpath");
+			if(xpath!=null)
+			{
+				String[] splitted = xpath.split(Pattern.quote(" || "));
+				for(String split:splitted)
+				{
+					// The first row with the xpath
+					String key=getKey(app, split);
+					if(!rowByXpath.containsKey(key))
+					{
+						rowByXpath.put(key, row);
+					}
+				}
+			}
+		}
+		for(Map.Entry<String, List<Properties>> entry:rowsByApp.entrySet())
+		{
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		}
+	}
+
+	/**
+	 * Get the first row of an app that has the xpath (ignoring case) as one of its xpaths
+	 * @param app The app
+	 * @param xpath The xpath
+	 * @return The row or null if not found
+	 */
+	public Properties getByXpath(String app, String xpath)
+	{
+		return rowByXpath.get(getKey(app, xpath));
+	}
+
+	/**
+	 * Get all rows of an app
+	 * @param app The app
+	 * @return The rows (read only) in the order they were read
+	 */
+	public List<Properties> getByApp(String app)
+	{
+		List<Properties> appRows=rowsByApp.get(app);
+		if(appRows==null)
+		{
+			return Collections.emptyList();
+		}
+		return appRows;
+	}
+
+	/**
+	 * @return All rows
+	 */
+	public List<Properties> getRows()
+	{
+		return rows;
+	}
+
+	public int size()
+	{
+		return rows.size();
+	}
+
+	private String getKey(String app, String xpath)
+	{
+		return app+"\n"+CandidateBatch.caseInsensitive(xpath);
+	}
+}
@@ -0,0 +1,339 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * All locators in one append-only file with an in-memory index (name - offset and length of the latest record).
+ * Reads are made from a memory mapped view of the file. A saved locator is appended as a new record and the
+ * old record becomes garbage that is removed by compact().
+ * <p>
+ * Record: magic (int), name length (int), properties length (int), name (UTF-8), properties (key=value lines in UTF-8)
+ */
+public class IndexedLocatorStore implements LocatorStore {
+    private static final int MAGIC = 0x534C4F43;
+    private static final int HEADER_SIZE = 12;
+    private static final String PROPERTIES_SUFFIX = ".properties";
+
+    private final File file;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private MappedByteBuffer mapped = null;
+    private final Map<String, long[]> index = new HashMap<>();
+    private long end = 0;
+    private long liveBytes = 0;
+    private boolean dirty = false;
+    private double compactionRatio = 0.5;
+
+    /**
+     * Open (or create) a locator store file
+     *
+     * @param file Path to the store file
+     * @throws IOException If the file can't be opened
+     */
+    public IndexedLocatorStore(File file) throws IOException {
+        this.file = file.getAbsoluteFile();
+        File parent = this.file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        open();
+    }
+
+    public IndexedLocatorStore(String filename) throws IOException {
+        this(new File(filename));
+    }
+
+    /**
+     * Create a store file from a folder of .properties files
+     *
+     * @param propertiesFolder Path to a folder that contains the property files
+     * @param storeFile        Path to the store file
+     * @return The store or null if it can't be created
+     */
+    public static IndexedLocatorStore fromFolder(String propertiesFolder, File storeFile) {
+        try {
+            IndexedLocatorStore store = new IndexedLocatorStore(storeFile);
+            store.importFolder(propertiesFolder);
+            return store;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized Properties load(String name) {
+        long[] entry = index.get(name);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return parseProperties(readBytes(entry[0], (int) entry[1]));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized boolean save(String name, Properties properties) {
+        byte[] body = propertiesToBytes(properties);
+        long[] entry = index.get(name);
+        try {
+            if (entry != null && entry[1] == body.length && Arrays.equals(readBytes(entry[0], body.length), body)) {
+                // Unchanged
+                return true;
+            }
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer record = createRecord(nameBytes, body);
+            long position = end;
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+            long recordSize = position - end;
+            long[] previous = index.put(name, new long[]{end + HEADER_SIZE + nameBytes.length, body.length, recordSize});
+            if (previous != null) {
+                liveBytes -= previous[2];
+            }
+            liveBytes += recordSize;
+            end = position;
+            dirty = true;
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized boolean exists(String name) {
+        return index.containsKey(name);
+    }
+
+    @Override
+    public synchronized Set<String> getNames() {
+        return new TreeSet<>(index.keySet());
+    }
+
+    /**
+     * Write appended records to disk and compact the file if more than half of it is garbage
+     */
+    @Override
+    public synchronized boolean flush() {
+        if (!dirty) {
+            return true;
+        }
+        try {
+            channel.force(false);
+            dirty = false;
+        } catch (IOException e) {
+            return false;
+        }
+        if (end > 0 && liveBytes < end * compactionRatio) {
+            return compact();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+        try {
+            channel.close();
+            randomAccessFile.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        mapped = null;
+    }
+
+    /**
+     * Rewrite the file with the latest record of each locator only (written to a temp file that replaces the store file)
+     *
+     * @return true if compacted
+     */
+    public synchronized boolean compact() {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile out = new RandomAccessFile(tempFile, "rw")) {
+            out.setLength(0);
+            FileChannel outChannel = out.getChannel();
+            for (String name : getNames()) {
+                long[] entry = index.get(name);
+                ByteBuffer record = createRecord(name.getBytes(StandardCharsets.UTF_8), readBytes(entry[0], (int) entry[1]));
+                while (record.hasRemaining()) {
+                    outChannel.write(record);
+                }
+            }
+            outChannel.force(true);
+        } catch (IOException e) {
+            tempFile.delete();
+            return false;
+        }
+        try {
+            channel.close();
+            randomAccessFile.close();
+            mapped = null;
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tempFile.delete();
+        }
+        try {
+            open();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Add all .properties files in a folder to the store
+     *
+     * @param propertiesFolder Path to a folder that contains the property files
+     * @return Number of imported locators
+     */
+    public int importFolder(String propertiesFolder) {
+        File[] files = new File(propertiesFolder).listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int count = 0;
+        for (File propertiesFile : files) {
+            String fileName = propertiesFile.getName();
+            if (propertiesFile.isFile() && fileName.endsWith(PROPERTIES_SUFFIX)) {
+                Properties properties = LocatorRepository.readProperties(propertiesFile);
+                if (properties != null && save(fileName.substring(0, fileName.length() - PROPERTIES_SUFFIX.length()), properties)) {
+                    count++;
+                }
+            }
+        }
+        flush();
+        return count;
+    }
+
+    /**
+     * Write all locators in the store as .properties files in a folder
+     *
+     * @param propertiesFolder Path to a folder
+     * @return Number of exported locators
+     */
+    public int exportFolder(String propertiesFolder) {
+        File folder = new File(propertiesFolder);
+        folder.mkdirs();
+        int count = 0;
+        for (String name : getNames()) {
+            Properties properties = load(name);
+            if (properties != null && LocatorRepository.writeProperties(new File(folder, name + PROPERTIES_SUFFIX), properties)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public double getCompactionRatio() {
+        return compactionRatio;
+    }
+
+    /**
+     * Set when the file is compacted at flush
+     *
+     * @param compactionRatio Compact when less than this part of the file is in use (0.5 by default, 0 to never compact)
+     */
+    public void setCompactionRatio(double compactionRatio) {
+        this.compactionRatio = compactionRatio;
+    }
+
+    private void open() throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        index.clear();
+        liveBytes = 0;
+        end = 0;
+        mapped = null;
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (end + HEADER_SIZE <= size) {
+            header.clear();
+            channel.read(header, end);
+            header.flip();
+            int magic = header.getInt();
+            int nameLength = header.getInt();
+            int bodyLength = header.getInt();
+            long recordSize = HEADER_SIZE + (long) nameLength + bodyLength;
+            if (magic != MAGIC || nameLength < 0 || bodyLength < 0 || end + recordSize > size) {
+                // Incomplete record from an interrupted write
+                break;
+            }
+            ByteBuffer nameBuffer = ByteBuffer.allocate(nameLength);
+            channel.read(nameBuffer, end + HEADER_SIZE);
+            String name = new String(nameBuffer.array(), StandardCharsets.UTF_8);
+            long[] previous = index.put(name, new long[]{end + HEADER_SIZE + nameLength, bodyLength, recordSize});
+            if (previous != null) {
+                liveBytes -= previous[2];
+            }
+            liveBytes += recordSize;
+            end += recordSize;
+        }
+        if (end < size) {
+            channel.truncate(end);
+        }
+    }
+
+    private byte[] readBytes(long position, int length) throws IOException {
+        if (mapped == null || position + length > mapped.capacity()) {
+            // Map the file again when it has grown
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer buffer = mapped.duplicate();
+        buffer.position((int) position);
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static ByteBuffer createRecord(byte[] nameBytes, byte[] body) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + nameBytes.length + body.length);
+        record.putInt(MAGIC);
+        record.putInt(nameBytes.length);
+        record.putInt(body.length);
+        record.put(nameBytes);
+        record.put(body);
+        record.flip();
+        return record;
+    }
+
+    private static byte[] propertiesToBytes(Properties properties) {
+        StringBuilder sb = new StringBuilder();
+        for (Object keyObject : properties.keySet()) {
+            String key = (String) keyObject;
+            sb.append(key).append('=').append(properties.getProperty(key)).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Properties parseProperties(byte[] bytes) {
+        Properties properties = new Properties();
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        for (String line : text.split("\n")) {
+            String[] split = line.split("=", 2);
+            if (split.length == 2) {
+                properties.put(split[0], split[1]);
+            }
+        }
+        return properties;
+    }
+}
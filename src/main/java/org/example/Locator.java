@@ -2,17 +2,47 @@ package org.example;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
 /**
  * Represents an locator for an element.
+ * Known metadata keys are stored in fixed slots (an array) and other keys in an overflow map.
+ * Properties given to the locator are kept up to date with all changes (written through).
+ * Repaired and ignored keys are flags (bits per slot for the lookup and a set of all keys in the order they were flagged)
+ * that are stored as the space separated repaired and ignored metadata by storeFlags.
  */
 public class Locator implements Comparable<Object>
 {
+	private static final String[] SLOT_KEYS={"tag", "class", "name", "id", "href", "alt", "xpath", "idxpath", "is_button", "location", "area", "shape", "visible_text", "neighbor_text",
+		"x", "y", "width", "height", "text", "value", "type", "placeholder", "title", "widget_id", "app", "repaired", "ignored", "total_similaity"};
+	private static final Map<String, Integer> SLOT_INDEX=new HashMap<String, Integer>();
+	static
+	{
+		for(int i=0; i<SLOT_KEYS.length; i++)
+		{
+			SLOT_INDEX.put(SLOT_KEYS[i], i);
+		}
+	}
+	private static final int REPAIRED_SLOT=slotOf("repaired");
+	private static final int IGNORED_SLOT=slotOf("ignored");
+
 	private long index=0;
-	private Properties properties=new Properties();
+	private String[] slots=new String[SLOT_KEYS.length];
+	private Map<String, String> overflow=null;
+	private Properties properties=null;
+	private long repairedSlots=0;
+	private long ignoredSlots=0;
+	private Set<String> repairedKeys=null;
+	private Set<String> ignoredKeys=null;
+	private boolean flagsChanged=false;
+	private volatile boolean sharedMetadata=false;
 	private Rectangle locationArea=null;
 	private int x=0;
 	private int y=0;
@@ -32,32 +62,180 @@ public class Locator implements Comparable<Object>
 		setProperties(properties);
 	}
 
+	/**
+	 * Create a copy that shares the metadata with this locator until one of them changes it (copy on write)
+	 * @return The copy
+	 */
 	public Locator clone()
 	{
 		Locator clone = new Locator();
 		clone.index = index;
-		clone.locationArea = new Rectangle(locationArea);
-		clone.properties = new Properties();
-		Set<Object> keySet=properties.keySet();
-		for(Object o:keySet)
+		if(locationArea!=null)
 		{
-			String key=(String)o;
-			String value=properties.getProperty(key);
-			clone.properties.put(key, value);
+			clone.locationArea = new Rectangle(locationArea);
 		}
+		clone.x = x;
+		clone.y = y;
+		clone.width = width;
+		clone.height = height;
+		clone.slots = slots;
+		clone.overflow = overflow;
+		clone.repairedSlots = repairedSlots;
+		clone.ignoredSlots = ignoredSlots;
+		clone.repairedKeys = repairedKeys;
+		clone.ignoredKeys = ignoredKeys;
+		clone.flagsChanged = flagsChanged;
+		clone.sharedMetadata = true;
+		sharedMetadata = true;
 		return clone;
 	}
+
+	/**
+	 * Get an own copy of the metadata before it is changed (if shared with a clone)
+	 */
+	private void copyOnWrite()
+	{
+		if(!sharedMetadata)
+		{
+			return;
+		}
+		slots = slots.clone();
+		if(overflow!=null)
+		{
+			overflow = new LinkedHashMap<String, String>(overflow);
+		}
+		if(repairedKeys!=null)
+		{
+			repairedKeys = new LinkedHashSet<String>(repairedKeys);
+		}
+		if(ignoredKeys!=null)
+		{
+			ignoredKeys = new LinkedHashSet<String>(ignoredKeys);
+		}
+		sharedMetadata = false;
+	}
 	
+	/**
+	 * Get all metadata as properties (created the first time and then kept up to date)
+	 * @return The properties
+	 */
 	public Properties getProperties()
 	{
+		storeFlags();
+		if(properties==null)
+		{
+			Properties view=new Properties();
+			for(int i=0; i<slots.length; i++)
+			{
+				if(slots[i]!=null)
+				{
+					view.put(SLOT_KEYS[i], slots[i]);
+				}
+			}
+			if(overflow!=null)
+			{
+				view.putAll(overflow);
+			}
+			properties=view;
+		}
 		return properties;
 	}
 
+	/**
+	 * Clear the locator so that it can be reused for another element (metadata shared with clones is not changed)
+	 */
+	void reset()
+	{
+		if(sharedMetadata)
+		{
+			slots=new String[SLOT_KEYS.length];
+			overflow=null;
+			sharedMetadata=false;
+		}
+		else
+		{
+			Arrays.fill(slots, null);
+			if(overflow!=null)
+			{
+				overflow.clear();
+			}
+		}
+		properties=null;
+		repairedSlots=0;
+		ignoredSlots=0;
+		repairedKeys=null;
+		ignoredKeys=null;
+		flagsChanged=false;
+		index=0;
+		x=0;
+		y=0;
+		width=0;
+		height=0;
+		maxScore=0;
+		score=0;
+		duration=0;
+	}
+
+	/**
+	 * Set all metadata from properties. Changes to the metadata are written to the properties.
+	 * @param properties The properties
+	 */
 	public void setProperties(Properties properties)
 	{
+		slots=new String[SLOT_KEYS.length];
+		overflow=null;
+		sharedMetadata=false;
+		repairedSlots=0;
+		ignoredSlots=0;
+		repairedKeys=null;
+		ignoredKeys=null;
+		flagsChanged=false;
+		this.properties = null;
+		if(properties!=null)
+		{
+			Set<Object> keySet=properties.keySet();
+			for(Object o:keySet)
+			{
+				String key=(String)o;
+				String value=(String)properties.get(key);
+				putMetadata(key, value);
+			}
+		}
 		this.properties = properties;
 	}
 
+	/**
+	 * Get the slot of a known metadata key
+	 * @param key The metadata key
+	 * @return The slot or -1 if the key has no slot
+	 */
+	public static int slotOf(String key)
+	{
+		Integer slot=SLOT_INDEX.get(key);
+		if(slot==null)
+		{
+			return -1;
+		}
+		return slot;
+	}
+
+	/**
+	 * @return Number of slots (known metadata keys)
+	 */
+	public static int getSlotCount()
+	{
+		return SLOT_KEYS.length;
+	}
+
+	/**
+	 * @param slot A slot
+	 * @return The metadata key of the slot
+	 */
+	public static String getSlotKey(int slot)
+	{
+		return SLOT_KEYS[slot];
+	}
+
 	/**
 	 * Get metadata for key
 	 * @param key The key to get metadata from
@@ -65,12 +243,48 @@ public class Locator implements Comparable<Object>
 	 */
 	public String getMetadata(String key)
 	{
-		return (String)properties.get(key);
+		int slot=slotOf(key);
+		if(slot>=0)
+		{
+			return getMetadata(slot);
+		}
+		if(overflow==null)
+		{
+			return null;
+		}
+		return overflow.get(key);
+	}
+
+	/**
+	 * Get metadata for a slot
+	 * @param slot The slot (see slotOf)
+	 * @return Metadata for the slot or null
+	 */
+	public String getMetadata(int slot)
+	{
+		if(flagsChanged && (slot==REPAIRED_SLOT || slot==IGNORED_SLOT))
+		{
+			storeFlags();
+		}
+		return slots[slot];
 	}
 
 	public int getNoProperties()
 	{
-		return properties.size();
+		storeFlags();
+		int count=0;
+		for(String value:slots)
+		{
+			if(value!=null)
+			{
+				count++;
+			}
+		}
+		if(overflow!=null)
+		{
+			count+=overflow.size();
+		}
+		return count;
 	}
 
 	/**
@@ -79,16 +293,18 @@ public class Locator implements Comparable<Object>
 	 */
 	public List<String> getMetadataKeys()
 	{
-		if(properties==null)
+		storeFlags();
+		List<String> keyList=new ArrayList<String>();
+		for(int i=0; i<slots.length; i++)
 		{
-			return null;
+			if(slots[i]!=null)
+			{
+				keyList.add(SLOT_KEYS[i]);
+			}
 		}
-		Set<Object> keySet=properties.keySet();
-		List<String> keyList=new ArrayList<String>();
-		for(Object o:keySet)
+		if(overflow!=null)
 		{
-			String s=(String)o;
-			keyList.add(s);
+			keyList.addAll(overflow.keySet());
 		}
 		return keyList;
 	}
@@ -102,7 +318,41 @@ public class Locator implements Comparable<Object>
 	{
 		if(value!=null)
 		{
-			properties.put(key, value);
+			int slot=slotOf(key);
+			if(slot>=0)
+			{
+				setSlot(slot, value);
+			}
+			else
+			{
+				copyOnWrite();
+				if(overflow==null)
+				{
+					overflow=new LinkedHashMap<String, String>();
+				}
+				overflow.put(key, value);
+			}
+			if(properties!=null)
+			{
+				properties.put(key, value);
+			}
+		}
+	}
+
+	/**
+	 * Put meta data for a slot
+	 * @param slot The slot (see slotOf)
+	 * @param value The metadata value
+	 */
+	public void putMetadata(int slot, String value)
+	{
+		if(value!=null)
+		{
+			setSlot(slot, value);
+			if(properties!=null)
+			{
+				properties.put(SLOT_KEYS[slot], value);
+			}
 		}
 	}
 
@@ -112,6 +362,16 @@ public class Locator implements Comparable<Object>
 	 */
 	public void removeMetadata(String key)
 	{
+		int slot=slotOf(key);
+		if(slot>=0)
+		{
+			setSlot(slot, null);
+		}
+		else if(overflow!=null)
+		{
+			copyOnWrite();
+			overflow.remove(key);
+		}
 		if(properties!=null)
 		{
 			properties.remove(key);
@@ -135,27 +395,12 @@ public class Locator implements Comparable<Object>
 
 	public boolean containsRepairedMetadata()
 	{
-		String repaired=getMetadata("repaired");
-		if(repaired==null || repaired.length()==0)
-		{
-			return false;
-		}
-		return true;
+		return repairedSlots!=0 || (repairedKeys!=null && !repairedKeys.isEmpty());
 	}
 
 	public boolean isRepairedMetadata(String key)
 	{
-		String repaired=getMetadata("repaired");
-		if(repaired==null)
-		{
-			return false;
-		}
-		String paddedRepaired=" "+repaired+" ";
-		if(paddedRepaired.indexOf(" "+key+" ")>=0)
-		{
-			return true;
-		}
-		return false;
+		return isFlagged(key, repairedSlots, repairedKeys);
 	}
 	
 	public void addRepairedMetadata(String key)
@@ -165,32 +410,23 @@ public class Locator implements Comparable<Object>
 			// Already repaired
 			return;
 		}
-		String repaired=getMetadata("repaired");
-		if(repaired==null)
+		int slot=slotOf(key);
+		if(slot>=0)
 		{
-			repaired="";
+			repairedSlots|=1L<<slot;
 		}
-		if(repaired.length()>0)
+		copyOnWrite();
+		if(repairedKeys==null)
 		{
-			repaired+=" ";
+			repairedKeys=new LinkedHashSet<String>();
 		}
-		repaired+=key;
-		putMetadata("repaired", repaired);
+		repairedKeys.add(key);
+		flagsChanged=true;
 	}
 
 	public boolean isIgnoredMetadata(String key)
 	{
-		String ignored=getMetadata("ignored");
-		if(ignored==null)
-		{
-			return false;
-		}
-		String paddedIgnored=" "+ignored+" ";
-		if(paddedIgnored.indexOf(" "+key+" ")>=0)
-		{
-			return true;
-		}
-		return false;
+		return isFlagged(key, ignoredSlots, ignoredKeys);
 	}
 	
 	public void addIgnoredMetadata(String key)
@@ -200,17 +436,124 @@ public class Locator implements Comparable<Object>
 			// Already ignored
 			return;
 		}
-		String ignored=getMetadata("ignored");
-		if(ignored==null)
+		int slot=slotOf(key);
+		if(slot>=0)
 		{
-			ignored="";
+			ignoredSlots|=1L<<slot;
 		}
-		if(ignored.length()>0)
+		copyOnWrite();
+		if(ignoredKeys==null)
+		{
+			ignoredKeys=new LinkedHashSet<String>();
+		}
+		ignoredKeys.add(key);
+		flagsChanged=true;
+	}
+
+	/**
+	 * Store changed repaired and ignored flags as the repaired and ignored metadata (space separated keys)
+	 */
+	public void storeFlags()
+	{
+		if(!flagsChanged)
+		{
+			return;
+		}
+		flagsChanged=false;
+		storeFlags(REPAIRED_SLOT, repairedKeys);
+		storeFlags(IGNORED_SLOT, ignoredKeys);
+	}
+
+	/**
+	 * The keys are stored in the order they were flagged (same as the metadata they were read from)
+	 */
+	private void storeFlags(int flagSlot, Set<String> flaggedKeys)
+	{
+		StringBuilder buf=new StringBuilder();
+		if(flaggedKeys!=null)
+		{
+			for(String key:flaggedKeys)
+			{
+				if(buf.length()>0)
+				{
+					buf.append(' ');
+				}
+				buf.append(key);
+			}
+		}
+		String value=buf.length()>0?buf.toString():null;
+		String current=slots[flagSlot];
+		if(value==null ? current==null : value.equals(current))
+		{
+			// Unchanged
+			return;
+		}
+		copyOnWrite();
+		slots[flagSlot]=value;
+		if(properties!=null)
+		{
+			if(value==null)
+			{
+				properties.remove(SLOT_KEYS[flagSlot]);
+			}
+			else
+			{
+				properties.put(SLOT_KEYS[flagSlot], value);
+			}
+		}
+	}
+
+	private boolean isFlagged(String key, long flaggedSlots, Set<String> flaggedKeys)
+	{
+		int slot=slotOf(key);
+		if(slot>=0)
+		{
+			return (flaggedSlots & (1L<<slot))!=0;
+		}
+		return flaggedKeys!=null && flaggedKeys.contains(key);
+	}
+
+	/**
+	 * Set a slot and read the flags from the repaired and ignored metadata
+	 */
+	private void setSlot(int slot, String value)
+	{
+		copyOnWrite();
+		slots[slot]=value;
+		if(slot==REPAIRED_SLOT || slot==IGNORED_SLOT)
 		{
-			ignored+=" ";
+			long flaggedSlots=0;
+			Set<String> flaggedKeys=null;
+			if(value!=null)
+			{
+				for(String key:value.split(" "))
+				{
+					int keySlot=slotOf(key);
+					if(keySlot>=0)
+					{
+						flaggedSlots|=1L<<keySlot;
+					}
+					if(key.length()>0)
+					{
+						if(flaggedKeys==null)
+						{
+							flaggedKeys=new LinkedHashSet<String>();
+						}
+						flaggedKeys.add(key);
+					}
+				}
+			}
+			if(slot==REPAIRED_SLOT)
+			{
+				repairedSlots=flaggedSlots;
+				repairedKeys=flaggedKeys;
+			}
+			else
+			{
+				ignoredSlots=flaggedSlots;
+				ignoredKeys=flaggedKeys;
+			}
 		}
-		ignored+=key;
-		putMetadata("ignored", ignored);
 	}
 
 	public Rectangle getLocationArea()
@@ -0,0 +1,52 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Locators that are reused by the next extraction instead of being created again.
+ * All locators handed out since the previous extraction are reset, so only use the arena when nobody keeps
+ * the locators of the previous extraction (clones are safe since they do not share changes).
+ */
+class LocatorArena {
+    private final List<Locator> locators = new ArrayList<>();
+    private int next = 0;
+
+    /**
+     * Start a new extraction - all locators can be reused
+     */
+    void startExtraction() {
+        next = 0;
+    }
+
+    /**
+     * @return A reset locator
+     */
+    Locator nextLocator() {
+        Locator locator;
+        if (next < locators.size()) {
+            locator = locators.get(next);
+            locator.reset();
+        } else {
+            locator = new Locator();
+            locators.add(locator);
+        }
+        next++;
+        return locator;
+    }
+
+    /**
+     * @return Number of locators used by the latest extraction
+     */
+    int size() {
+        return next;
+    }
+
+    /**
+     * Release all locators
+     */
+    void clear() {
+        locators.clear();
+        next = 0;
+    }
+}
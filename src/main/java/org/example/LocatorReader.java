@@ -0,0 +1,158 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the rows of a CSV file as locators, the same as SimiloLLM.readCSV and toLocator but without
+ * creating a Properties per row. The columns are mapped to locator keys (slots) from the header and
+ * the values of other columns are skipped. The widget_id is the row number.
+ */
+public class LocatorReader implements Iterator<Locator>, Closeable
+{
+	// The keys of SimiloLLM.toLocator (in the same order)
+	static final String[] LOCATOR_KEYS={"widget_id", "tag", "class", "name", "id", "href", "alt", "xpath", "idxpath", "is_button", "location", "area", "shape", "visible_text", "neighbor_text"};
+
+	private final String[] keys;
+	private final int[] slots;
+	private final boolean[] removeComma;
+	private final CsvParser<Locator> parser;
+	private int[] columns=null;
+	private int widgetId=0;
+
+	/**
+	 * Read a CSV file
+	 * @param filename The CSV file (a resource)
+	 * @param extraKeys Columns to add to the locators (for example app)
+	 * @throws IOException If the file can't be read
+	 */
+	public LocatorReader(String filename, String... extraKeys) throws IOException
+	{
+		this(new File(Objects.requireNonNull(LocatorReader.class.getClassLoader().getResource(filename)).getFile()), extraKeys);
+	}
+
+	/**
+	 * Read a CSV file
+	 * @param file The CSV file (Cp1252)
+	 * @param extraKeys Columns to add to the locators (for example app)
+	 * @throws IOException If the file can't be read
+	 */
+	public LocatorReader(File file, String... extraKeys) throws IOException
+	{
+		this(new InputStreamReader(new FileInputStream(file), "Cp1252"), extraKeys);
+	}
+
+	/**
+	 * Read a CSV file
+	 * @param in The CSV file
+	 * @param extraKeys Columns to add to the locators (for example app)
+	 * @throws IOException If the file can't be read
+	 */
+	public LocatorReader(Reader in, String... extraKeys) throws IOException
+	{
+		List<String> allKeys=new ArrayList<String>(Arrays.asList(LOCATOR_KEYS));
+		for(String key:extraKeys)
+		{
+			if(!allKeys.contains(key))
+			{
+				allKeys.add(key);
+			}
+		}
+		keys=allKeys.toArray(new String[0]);
+		slots=new int[keys.length];
+		removeComma=new boolean[keys.length];
+		for(int i=0; i<keys.length; i++)
+		{
+			slots[i]=Locator.slotOf(keys[i]);
+			removeComma[i]="neighbor_text".equals(keys[i]);
+		}
+		// widget_id is not read
+		parser=new CsvParser<Locator>(in, this::createLocator, allKeys.subList(1, allKeys.size()));
+	}
+
+	public boolean hasNext()
+	{
+		return parser.hasNext();
+	}
+
+	/**
+	 * @return The locator of the next row
+	 * @throws NoSuchElementException If no more rows or the row does not have the same number of columns as the header
+	 */
+	public Locator next() throws NoSuchElementException
+	{
+		return parser.next();
+	}
+
+	/**
+	 * @return The remaining rows as a stream of locators (closing the stream closes the file)
+	 */
+	public Stream<Locator> stream()
+	{
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(this::close);
+	}
+
+	public void close()
+	{
+		parser.close();
+	}
+
+	private Locator createLocator(List<String> header, List<String> values)
+	{
+		if(columns==null)
+		{
+			// Column of each key (the last one if a name is repeated, same as Properties)
+			columns=new int[keys.length];
+			for(int i=0; i<keys.length; i++)
+			{
+				columns[i]=header.lastIndexOf(keys[i]);
+			}
+		}
+		Locator locator=new Locator();
+		for(int i=0; i<keys.length; i++)
+		{
+			String value;
+			if(i==0)
+			{
+				// widget_id
+				value=""+widgetId;
+			}
+			else
+			{
+				value=columns[i]>=0 ? values.get(columns[i]) : null;
+				if(value==null || value.equalsIgnoreCase("null") || value.length()==0)
+				{
+					continue;
+				}
+				if(removeComma[i])
+				{
+					value=value.replace(',', ' ');
+				}
+			}
+			if(slots[i]>=0)
+			{
+				locator.putMetadata(slots[i], value);
+			}
+			else
+			{
+				locator.putMetadata(keys[i], value);
+			}
+		}
+		widgetId++;
+		return locator;
+	}
+}
@@ -0,0 +1,421 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory repository of the locator properties files in a folder.
+ * Each file is read once and changes are kept in memory (dirty) and written in batches by a background thread.
+ * A file is only written if it differs from the last written content, so repeated repairs are coalesced into one write.
+ * A file saved in crash safe mode is written to a temp file that is synced and renamed (never half written).
+ * The mode is given per save, so a folder has one repository whatever the mode of its users.
+ * All repositories are flushed when the JVM shuts down.
+ */
+public class LocatorRepository {
+    private static final String PROPERTIES_SUFFIX = ".properties";
+    private static final Map<String, LocatorRepository> repositories = new HashMap<>();
+    private static boolean shutdownHookAdded = false;
+
+    private final File folder;
+    private final Map<File, Properties> locators = new ConcurrentHashMap<>();
+    private final Map<File, Properties> writtenLocators = new ConcurrentHashMap<>();
+    // Changed files and if they must be written in crash safe mode
+    private final Map<File, Boolean> dirtyFiles = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flushExecutor = null;
+    private long flushInterval = 1000;
+
+    private LocatorRepository(File folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Get the repository for a folder (one repository per folder)
+     *
+     * @param propertiesFolder Path to a folder that contains the property files
+     * @return The repository for the folder
+     */
+    public static synchronized LocatorRepository getRepository(String propertiesFolder) {
+        File folder = new File(propertiesFolder).getAbsoluteFile();
+        String key = folder.getPath();
+        LocatorRepository repository = repositories.get(key);
+        if (repository == null) {
+            repository = new LocatorRepository(folder);
+            repositories.put(key, repository);
+        }
+        if (!shutdownHookAdded) {
+            Runtime.getRuntime().addShutdownHook(new Thread(LocatorRepository::flushAll, "similo-repository-flush"));
+            shutdownHookAdded = true;
+        }
+        return repository;
+    }
+
+    /**
+     * Flush the dirty locators of all repositories
+     */
+    public static void flushAll() {
+        List<LocatorRepository> all;
+        synchronized (LocatorRepository.class) {
+            all = new ArrayList<>(repositories.values());
+        }
+        for (LocatorRepository repository : all) {
+            repository.flush();
+        }
+    }
+
+    /**
+     * Load the locator properties (read from file the first time)
+     *
+     * @param file Path to a properties file that contains the locators
+     * @return A copy of the properties or null if the file can't be read
+     */
+    public Properties load(File file) {
+        File key = file.getAbsoluteFile();
+        Properties properties = locators.get(key);
+        if (properties == null) {
+            properties = readProperties(key);
+            if (properties == null) {
+                // File not found
+                return null;
+            }
+            Properties existing = locators.putIfAbsent(key, properties);
+            if (existing != null) {
+                properties = existing;
+            } else {
+                writtenLocators.put(key, properties);
+            }
+        }
+        return (Properties) properties.clone();
+    }
+
+    /**
+     * Save the locator properties. New files are written at once, changes to existing files by the next flush.
+     *
+     * @param file       Path to a properties file that contains the locators
+     * @param properties The properties to save (copied)
+     * @return true if saved
+     */
+    public boolean save(File file, Properties properties) {
+        return save(file, properties, false);
+    }
+
+    /**
+     * Save the locator properties. New files are written at once, changes to existing files by the next flush.
+     *
+     * @param file       Path to a properties file that contains the locators
+     * @param properties The properties to save (copied)
+     * @param crashSafe  true to write the file atomically (temp file, sync and rename)
+     * @return true if saved
+     */
+    public boolean save(File file, Properties properties, boolean crashSafe) {
+        File key = file.getAbsoluteFile();
+        Properties copy = (Properties) properties.clone();
+        if (!key.exists()) {
+            // Create the file so that it can be found
+            locators.put(key, copy);
+            boolean written = crashSafe ? writePropertiesAtomic(key, copy) : writeProperties(key, copy);
+            if (written) {
+                writtenLocators.put(key, copy);
+            }
+            return written;
+        }
+        Properties existing = locators.put(key, copy);
+        if (!copy.equals(existing)) {
+            // Crash safe if any of the coalesced saves is
+            dirtyFiles.merge(key, crashSafe, Boolean::logicalOr);
+            scheduleFlush();
+        }
+        return true;
+    }
+
+    /**
+     * @param file Path to a properties file
+     * @return true if the file exists or is in the repository
+     */
+    public boolean exists(File file) {
+        File key = file.getAbsoluteFile();
+        return locators.containsKey(key) || key.exists();
+    }
+
+    /**
+     * Write all dirty locators to file
+     *
+     * @return true if all were written
+     */
+    public synchronized boolean flush() {
+        boolean success = true;
+        List<File> files = new ArrayList<>(dirtyFiles.keySet());
+        List<File> tempFiles = new ArrayList<>();
+        List<File> renamedFiles = new ArrayList<>();
+        List<Properties> renamedLocators = new ArrayList<>();
+        for (File file : files) {
+            Boolean crashSafe = dirtyFiles.remove(file);
+            Properties properties = locators.get(file);
+            if (crashSafe == null || properties == null || properties.equals(writtenLocators.get(file))) {
+                // Changed back to the written content
+                continue;
+            }
+            if (crashSafe) {
+                File tempFile = getTempFile(file);
+                if (writeProperties(tempFile, properties, true)) {
+                    tempFiles.add(tempFile);
+                    renamedFiles.add(file);
+                    renamedLocators.add(properties);
+                } else {
+                    success = false;
+                }
+            } else if (writeProperties(file, properties)) {
+                writtenLocators.put(file, properties);
+            } else {
+                success = false;
+            }
+        }
+        // All temp files are synced - replace the files
+        for (int i = 0; i < tempFiles.size(); i++) {
+            File file = renamedFiles.get(i);
+            if (moveAtomic(tempFiles.get(i), file)) {
+                writtenLocators.put(file, renamedLocators.get(i));
+            } else {
+                success = false;
+            }
+        }
+        if (!renamedFiles.isEmpty()) {
+            syncFolder(folder);
+        }
+        return success;
+    }
+
+    /**
+     * Flush the dirty locators and stop the background flush
+     */
+    public synchronized void close() {
+        flush();
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+            flushExecutor = null;
+        }
+    }
+
+    /**
+     * Remove all locators from memory (after a flush)
+     */
+    public synchronized void clear() {
+        flush();
+        locators.clear();
+    }
+
+    /**
+     * Get the repository as a store of the locators in the folder by name
+     *
+     * @param crashSafe true to write the saved locators atomically (temp file, sync and rename)
+     * @return The store (closing it only flushes the repository)
+     */
+    public LocatorStore getStore(boolean crashSafe) {
+        return new Store(crashSafe);
+    }
+
+    public File getFolder() {
+        return folder;
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Set the time between a change and the batch write of all changes
+     *
+     * @param flushInterval Time in milliseconds (1000 by default)
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    private File getFile(String name) {
+        return new File(folder, name + PROPERTIES_SUFFIX);
+    }
+
+    private synchronized void scheduleFlush() {
+        if (flushExecutor == null) {
+            flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "similo-repository");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flushExecutor.scheduleWithFixedDelay(() -> {
+                if (!dirtyFiles.isEmpty()) {
+                    flush();
+                }
+            }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Read a locator properties file (key=value lines in UTF-8)
+     *
+     * @return The properties or null if the file can't be read
+     */
+    static Properties readProperties(File file) {
+        Properties properties = new Properties();
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF8"));
+            String str;
+            while ((str = in.readLine()) != null) {
+                String[] split = str.split("=", 2);
+                if (split.length == 2) {
+                    properties.put(split[0], split[1]);
+                }
+            }
+            in.close();
+            return properties;
+        } catch (Exception e) {
+            // File not found
+            return null;
+        }
+    }
+
+    /**
+     * Write a locator properties file (key=value lines in UTF-8)
+     *
+     * @return true if written
+     */
+    static boolean writeProperties(File file, Properties properties) {
+        return writeProperties(file, properties, false);
+    }
+
+    /**
+     * Write a locator properties file to a synced temp file that replaces the file
+     *
+     * @return true if written
+     */
+    static boolean writePropertiesAtomic(File file, Properties properties) {
+        File tempFile = getTempFile(file);
+        if (!writeProperties(tempFile, properties, true) || !moveAtomic(tempFile, file)) {
+            return false;
+        }
+        syncFolder(file.getAbsoluteFile().getParentFile());
+        return true;
+    }
+
+    private static boolean writeProperties(File file, Properties properties, boolean sync) {
+        try {
+            FileOutputStream fileOut = new FileOutputStream(file);
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(fileOut, "UTF8"));
+            for (Object keyObject : properties.keySet()) {
+                String key = (String) keyObject;
+                String value = properties.getProperty(key);
+                out.write(key + "=" + value);
+                out.newLine();
+            }
+            out.flush();
+            if (sync) {
+                fileOut.getFD().sync();
+            }
+            out.close();
+        } catch (Exception e) {
+            return false;
+        }
+        return true;
+    }
+
+    private static File getTempFile(File file) {
+        return new File(file.getPath() + ".tmp");
+    }
+
+    private static boolean moveAtomic(File source, File target) {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (Exception e) {
+            source.delete();
+            return false;
+        }
+    }
+
+    private static void syncFolder(File folder) {
+        if (folder == null) {
+            return;
+        }
+        // Persist the renames (not supported on all platforms)
+        try (FileChannel channel = FileChannel.open(folder.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (Exception e) {
+        }
+    }
+
+    /**
+     * The locators of the repository by name, saved in one mode
+     */
+    private class Store implements LocatorStore {
+        private final boolean crashSafe;
+
+        private Store(boolean crashSafe) {
+            this.crashSafe = crashSafe;
+        }
+
+        @Override
+        public Properties load(String name) {
+            return LocatorRepository.this.load(getFile(name));
+        }
+
+        @Override
+        public boolean save(String name, Properties properties) {
+            return LocatorRepository.this.save(getFile(name), properties, crashSafe);
+        }
+
+        @Override
+        public boolean exists(String name) {
+            return LocatorRepository.this.exists(getFile(name));
+        }
+
+        @Override
+        public Set<String> getNames() {
+            Set<String> names = new TreeSet<>();
+            String[] fileNames = folder.list();
+            if (fileNames != null) {
+                for (String fileName : fileNames) {
+                    if (fileName.endsWith(PROPERTIES_SUFFIX)) {
+                        names.add(fileName.substring(0, fileName.length() - PROPERTIES_SUFFIX.length()));
+                    }
+                }
+            }
+            for (File file : locators.keySet()) {
+                String fileName = file.getName();
+                if (folder.equals(file.getParentFile()) && fileName.endsWith(PROPERTIES_SUFFIX)) {
+                    names.add(fileName.substring(0, fileName.length() - PROPERTIES_SUFFIX.length()));
+                }
+            }
+            return names;
+        }
+
+        @Override
+        public boolean flush() {
+            return LocatorRepository.this.flush();
+        }
+
+        @Override
+        public void close() {
+            // Shared by all users of the folder
+            LocatorRepository.this.flush();
+        }
+    }
+}
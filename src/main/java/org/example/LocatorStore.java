@@ -0,0 +1,45 @@
+package org.example;
+
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Storage of locator properties by name (the file name used in findElement, click, type etc.)
+ */
+public interface LocatorStore {
+    /**
+     * @param name Name of the locator
+     * @return A copy of the locator properties or null if not found
+     */
+    Properties load(String name);
+
+    /**
+     * @param name       Name of the locator
+     * @param properties The locator properties
+     * @return true if saved
+     */
+    boolean save(String name, Properties properties);
+
+    /**
+     * @param name Name of the locator
+     * @return true if the locator is in the store
+     */
+    boolean exists(String name);
+
+    /**
+     * @return The names of all locators in the store
+     */
+    Set<String> getNames();
+
+    /**
+     * Write pending changes
+     *
+     * @return true if written
+     */
+    boolean flush();
+
+    /**
+     * Write pending changes and release the store
+     */
+    void close();
+}
@@ -0,0 +1,89 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Oracle rows (app, fromxpath, toxpath) indexed once.
+ * Gives the same results as SimiloLLM.getOracleXpaths and oracleExist without scanning all rows.
+ */
+public class OracleIndex
+{
+	private final List<Properties> rows;
+	private final Map<String, List<String>> toXpathsByFromXpath=new HashMap<String, List<String>>();
+	private final Set<String> oracles=new HashSet<String>();
+
+	public OracleIndex(List<Properties> rows)
+	{
+		this.rows=rows;
+		for(Properties row:rows)
+		{
+			String app=(String)row.get("app");
+			String fromxpath=(String)row.get("fromxpath");
+			String toxpath=(String)row.get("toxpath");
+			if(app==null || fromxpath==null || toxpath==null)
+			{
+				continue;
+			}
+			oracles.add(getKey(app, fromxpath)+"\n"+CandidateBatch.caseInsensitive(toxpath));
+
+			// Normalized paths
+			String key=getKey(app, SimiloLLM.pathToIndexPath(fromxpath));
+			List<String> toXpaths=toXpathsByFromXpath.get(key);
+			if(toXpaths==null)
+			{
+				toXpaths=new ArrayList<String>();
+				toXpathsByFromXpath.put(key, toXpaths);
+			}
+			toXpaths.add(SimiloLLM.pathToIndexPath(toxpath));
+		}
+	}
+
+	/**
+	 * Get the (index path) xpaths of the elements that the element with fromxpath has become
+	 * @param app The app
+	 * @param fromxpath The index path of the element (ignoring case)
+	 * @return The index paths (read only) in the order they were read
+	 */
+	public List<String> getOracleXpaths(String app, String fromxpath)
+	{
+		List<String> toXpaths=toXpathsByFromXpath.get(getKey(app, fromxpath));
+		if(toXpaths==null)
+		{
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(toXpaths);
+	}
+
+	/**
+	 * @return true if there is an oracle from fromxpath to toxpath (ignoring case)
+	 */
+	public boolean oracleExist(String app, String fromxpath, String toxpath)
+	{
+		return oracles.contains(getKey(app, fromxpath)+"\n"+CandidateBatch.caseInsensitive(toxpath));
+	}
+
+	/**
+	 * @return All rows
+	 */
+	public List<Properties> getRows()
+	{
+		return rows;
+	}
+
+	public int size()
+	{
+		return rows.size();
+	}
+
+	private String getKey(String app, String xpath)
+	{
+		return app+"\n"+CandidateBatch.caseInsensitive(xpath);
+	}
+}
@@ -0,0 +1,402 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Parses a large CSV file (Cp1252) in parallel with the same result as CSVReader.
+ * The file is memory mapped and split in chunks that start at a new line outside of "" protection.
+ * The protection at a chunk start is found from the number of " before it (each " toggles protection).
+ * The chunks are parsed by CsvParser on a fork join pool and the rows are returned in file order.
+ */
+public class ParallelCsvReader<T>
+{
+	private static final byte QUOTE = '\"';
+
+	private final File file;
+
+	private final CsvParser.RowFactory<T> rowFactory;
+
+	private final char[] charTable = new char[256];
+
+	private List<String> headerLine = null;
+
+	private char columnSeparator = ',';
+
+	private long dataStart = 0;
+
+	private long chunkSize = 16 * 1024 * 1024;
+
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	/**
+	 * Parse a CSV file.
+	 *
+	 * @param file
+	 *          File to parse (Cp1252)
+	 * @param rowFactory
+	 *          Creates the rows
+	 * @throws IOException
+	 *           If the file can't be read or has no header line
+	 */
+	public ParallelCsvReader(File file, CsvParser.RowFactory<T> rowFactory) throws IOException
+	{
+		this.file = file;
+		this.rowFactory = rowFactory;
+		byte[] bytes = new byte[256];
+		for (int i = 0; i < bytes.length; i++)
+		{
+			bytes[i] = (byte) i;
+		}
+		// Cp1252 has one char per byte
+		new String(bytes, "Cp1252").getChars(0, 256, charTable, 0);
+		readHeader();
+	}
+
+	/**
+	 * Parse a CSV file into Properties (same as CSVReader).
+	 *
+	 * @param file
+	 *          File to parse (Cp1252)
+	 * @return The rows in file order
+	 * @throws IOException
+	 *           If the file can't be read or has no header line
+	 * @throws NoSuchElementException
+	 *           If a line does not have the same number of columns as the header
+	 */
+	public static List<Properties> readProperties(File file) throws IOException
+	{
+		return new ParallelCsvReader<Properties>(file, CSVReader.PROPERTIES_FACTORY).readAll();
+	}
+
+	/**
+	 * Parse all rows.
+	 *
+	 * @return The rows in file order
+	 * @throws IOException
+	 *           If the file can't be read
+	 * @throws NoSuchElementException
+	 *           If a line does not have the same number of columns as the header
+	 */
+	public List<T> readAll() throws IOException
+	{
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"))
+		{
+			final FileChannel channel = randomAccessFile.getChannel();
+			long size = channel.size();
+			List<long[]> chunks = findChunks(channel, size);
+
+			List<Future<List<T>>> parsed = new ArrayList<Future<List<T>>>();
+			for (final long[] chunk : chunks)
+			{
+				parsed.add(pool.submit(() -> parseChunk(channel, chunk[0], chunk[1])));
+			}
+			List<T> rows = new ArrayList<T>();
+			RuntimeException runtimeException = null;
+			IOException ioException = null;
+			for (Future<List<T>> future : parsed)
+			{
+				// Wait for all chunks (the mapped file is in use) and throw the first error in file order
+				try
+				{
+					List<T> chunkRows = get(future);
+					if (runtimeException == null && ioException == null)
+					{
+						rows.addAll(chunkRows);
+					}
+				}
+				catch (RuntimeException e)
+				{
+					if (runtimeException == null && ioException == null)
+					{
+						runtimeException = e;
+					}
+				}
+				catch (IOException e)
+				{
+					if (runtimeException == null && ioException == null)
+					{
+						ioException = e;
+					}
+				}
+			}
+			if (runtimeException != null)
+			{
+				throw runtimeException;
+			}
+			if (ioException != null)
+			{
+				throw ioException;
+			}
+			return rows;
+		}
+	}
+
+	public List<String> getHeaderLine()
+	{
+		return headerLine;
+	}
+
+	/**
+	 * The column separator used (comma by default).
+	 *
+	 * @return The current column separator.
+	 */
+	public char getColumnSeparator()
+	{
+		return columnSeparator;
+	}
+
+	public long getChunkSize()
+	{
+		return chunkSize;
+	}
+
+	/**
+	 * @param chunkSize
+	 *          Size (bytes) of the chunks that are parsed in parallel (16 MB by default)
+	 */
+	public void setChunkSize(long chunkSize)
+	{
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @param pool
+	 *          The pool that parses the chunks (the common pool by default)
+	 */
+	public void setPool(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+
+	/**
+	 * Read the first non blank line (the header) and find where the data starts.
+	 */
+	private void readHeader() throws IOException
+	{
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"))
+		{
+			FileChannel channel = randomAccessFile.getChannel();
+			long size = channel.size();
+			long position = 0;
+			while (position < size)
+			{
+				ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, Integer.MAX_VALUE));
+				StringBuilder line = new StringBuilder();
+				boolean protection = false;
+				boolean blank = true;
+				int i = 0;
+				for (; i < bytes.limit(); i++)
+				{
+					byte b = bytes.get(i);
+					if (!protection && (b == '\n' || b == '\r'))
+					{
+						break;
+					}
+					if (b == QUOTE)
+					{
+						protection = !protection;
+					}
+					char c = charTable[b & 0xFF];
+					if (c > ' ')
+					{
+						blank = false;
+					}
+					line.append(c);
+				}
+				position += Math.min(i + 1, bytes.limit());
+				if (!blank)
+				{
+					CsvParser<T> header = new CsvParser<T>(new StringReader(line.toString()), rowFactory);
+					headerLine = header.getHeaderLine();
+					columnSeparator = header.getColumnSeparator();
+					dataStart = position;
+					return;
+				}
+			}
+		}
+		throw new IOException("File does not contain a header line");
+	}
+
+	/**
+	 * Split the data in chunks that start at a new line outside of protection.
+	 *
+	 * @return Start and end of each chunk
+	 */
+	private List<long[]> findChunks(final FileChannel channel, long size) throws IOException
+	{
+		List<long[]> segments = new ArrayList<long[]>();
+		for (long start = dataStart; start < size; start += chunkSize)
+		{
+			segments.add(new long[] { start, Math.min(start + chunkSize, size) });
+		}
+		List<Future<long[]>> scanned = new ArrayList<Future<long[]>>();
+		for (final long[] segment : segments)
+		{
+			scanned.add(pool.submit(() -> scanSegment(channel, segment[0], segment[1])));
+		}
+
+		List<long[]> chunks = new ArrayList<long[]>();
+		long chunkStart = dataStart;
+		boolean protection = false;
+		for (int i = 0; i < segments.size(); i++)
+		{
+			long[] scan = get(scanned.get(i));
+			if (i > 0)
+			{
+				// First new line outside of protection in the segment
+				long lineStart = protection ? scan[2] : scan[1];
+				if (lineStart >= 0)
+				{
+					chunks.add(new long[] { chunkStart, lineStart });
+					chunkStart = lineStart;
+				}
+			}
+			if (scan[0] % 2 == 1)
+			{
+				protection = !protection;
+			}
+		}
+		if (chunkStart < size)
+		{
+			chunks.add(new long[] { chunkStart, size });
+		}
+		return chunks;
+	}
+
+	/**
+	 * Count the " in a segment and find the first new line with and without protection at the start.
+	 *
+	 * @return Number of ", start of the first line after a line break if not protected at start and if protected at start (-1 if none)
+	 */
+	private long[] scanSegment(FileChannel channel, long start, long end) throws IOException
+	{
+		ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		long quotes = 0;
+		long lineStartNotProtected = -1;
+		long lineStartProtected = -1;
+		for (int i = 0; i < bytes.limit(); i++)
+		{
+			byte b = bytes.get(i);
+			if (b == QUOTE)
+			{
+				quotes++;
+			}
+			else if (b == '\n' || b == '\r')
+			{
+				boolean evenQuotes = quotes % 2 == 0;
+				if (evenQuotes && lineStartNotProtected < 0)
+				{
+					lineStartNotProtected = start + i + 1;
+				}
+				else if (!evenQuotes && lineStartProtected < 0)
+				{
+					lineStartProtected = start + i + 1;
+				}
+				if (lineStartNotProtected >= 0 && lineStartProtected >= 0)
+				{
+					// Only the number of " is needed
+					for (i++; i < bytes.limit(); i++)
+					{
+						if (bytes.get(i) == QUOTE)
+						{
+							quotes++;
+						}
+					}
+				}
+			}
+		}
+		return new long[] { quotes, lineStartNotProtected, lineStartProtected };
+	}
+
+	private List<T> parseChunk(FileChannel channel, long start, long end) throws IOException
+	{
+		if (end - start > Integer.MAX_VALUE)
+		{
+			throw new IOException("Line too long");
+		}
+		ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		CsvParser<T> parser = new CsvParser<T>(new MappedReader(bytes, charTable), rowFactory, headerLine, columnSeparator);
+		List<T> rows = new ArrayList<T>();
+		while (parser.hasNext())
+		{
+			rows.add(parser.next());
+		}
+		return rows;
+	}
+
+	private static <V> V get(Future<V> future) throws IOException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+			{
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Reads chars from mapped bytes (one char per byte).
+	 */
+	private static class MappedReader extends Reader
+	{
+		private final ByteBuffer bytes;
+
+		private final char[] charTable;
+
+		private MappedReader(ByteBuffer bytes, char[] charTable)
+		{
+			this.bytes = bytes;
+			this.charTable = charTable;
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length)
+		{
+			if (!bytes.hasRemaining())
+			{
+				return -1;
+			}
+			int count = Math.min(length, bytes.remaining());
+			for (int i = 0; i < count; i++)
+			{
+				buffer[offset + i] = charTable[bytes.get() & 0xFF];
+			}
+			return count;
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+}
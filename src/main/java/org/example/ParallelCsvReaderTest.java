@@ -0,0 +1,143 @@
+package org.example;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * ParallelCsvReader reads the same rows as CSVReader wherever the chunks start
+ */
+public class ParallelCsvReaderTest
+{
+	private static final String CSV="\r\nid,text,other\r\n"
+			+"1,\"quoted, with separator\",a\r\n"
+			+"2,\"line\r\nbreak and \"\"quotes\"\"\",b\r\n"
+			+"\r\n"
+			+"3,\"\"\"\",\"\"\r\n"
+			+"4,\"many\nlines\rin\r\n\r\none\",d\n"
+			+"5,plain,e";
+
+	@Test
+	public void readProperties() throws IOException
+	{
+		File file=createFile(CSV);
+		try
+		{
+			assertEquals(readSequential(file), ParallelCsvReader.readProperties(file));
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	@Test
+	public void chunksInsideQuotes() throws IOException
+	{
+		File file=createFile(CSV);
+		try
+		{
+			List<Properties> expected=readSequential(file);
+			assertEquals(5, expected.size());
+			// Every chunk size down to one byte, so that chunks start inside the quoted fields
+			for(int chunkSize=1; chunkSize<=CSV.length(); chunkSize++)
+			{
+				assertEquals("Chunk size "+chunkSize, expected, readParallel(file, chunkSize));
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	@Test
+	public void randomFiles() throws IOException
+	{
+		Random random=new Random(47);
+		String[] parts={"a", "b c", ",", "\"", "\"\"", "\r", "\n", "\r\n", " ", ";"};
+		for(int i=0; i<200; i++)
+		{
+			StringBuilder csv=new StringBuilder("x,y,z\r\n");
+			int rows=random.nextInt(20);
+			for(int row=0; row<rows; row++)
+			{
+				for(int column=0; column<3; column++)
+				{
+					if(column>0)
+					{
+						csv.append(',');
+					}
+					csv.append('\"');
+					for(int part=random.nextInt(4); part>0; part--)
+					{
+						String text=parts[random.nextInt(parts.length)];
+						csv.append(text.startsWith("\"") ? text+text : text);
+					}
+					csv.append('\"');
+				}
+				csv.append(random.nextBoolean() ? "\r\n" : "\n");
+			}
+			File file=createFile(csv.toString());
+			try
+			{
+				List<Properties> expected=readSequential(file);
+				assertEquals(expected, readParallel(file, 1+random.nextInt(16)));
+			}
+			finally
+			{
+				file.delete();
+			}
+		}
+	}
+
+	private static List<Properties> readSequential(File file) throws IOException
+	{
+		List<Properties> rows=new ArrayList<Properties>();
+		CSVReader csvReader=new CSVReader(file);
+		try
+		{
+			while(csvReader.hasNext())
+			{
+				rows.add(csvReader.next());
+			}
+		}
+		finally
+		{
+			csvReader.close();
+		}
+		return rows;
+	}
+
+	private static List<Properties> readParallel(File file, long chunkSize) throws IOException
+	{
+		ParallelCsvReader<Properties> reader=new ParallelCsvReader<Properties>(file, CSVReader.PROPERTIES_FACTORY);
+		reader.setChunkSize(chunkSize);
+		return reader.readAll();
+	}
+
+	private static File createFile(String csv) throws IOException
+	{
+		File file=File.createTempFile("parallel", ".csv");
+		Writer writer=new OutputStreamWriter(new FileOutputStream(file), "Cp1252");
+		try
+		{
+			writer.write(csv);
+		}
+		finally
+		{
+			writer.close();
+		}
+		return file;
+	}
+}
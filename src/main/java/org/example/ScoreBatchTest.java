@@ -0,0 +1,93 @@
+package org.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Similo.scoreBatch and CandidateBatch.topLocators give the same scores and order as Similo.similo
+ */
+public class ScoreBatchTest
+{
+	private static final String[] WORDS={"Login", "login", "LOGIN", "Log in", "Sign up", "search", "Search now", "btn", "btn btn-primary", "", "menu", "home", "Home page", "x"};
+	private static final String[] TAGS={"a", "A", "button", "input", "div", "span"};
+
+	@Test
+	public void sameAsSimilo()
+	{
+		Similo similo=new Similo();
+		Random random=new Random(38);
+		for(int i=0; i<50; i++)
+		{
+			List<Locator> candidates=new ArrayList<Locator>();
+			int noCandidates=1+random.nextInt(60);
+			for(int c=0; c<noCandidates; c++)
+			{
+				candidates.add(createLocator(random));
+			}
+			Locator target=createLocator(random);
+
+			CandidateBatch batch=new CandidateBatch(candidates);
+			double[] scores=similo.scoreBatch(target, batch);
+			for(int c=0; c<noCandidates; c++)
+			{
+				assertEquals("Candidate "+c, similo.calcSimilarityScore(target, candidates.get(c)), scores[c], 1e-9);
+			}
+
+			List<Locator> topLocators=batch.topLocators(scores, noCandidates);
+			List<Locator> expected=similo.similo(target, new ArrayList<Locator>(candidates));
+			assertEquals(expected.size(), topLocators.size());
+			for(int c=0; c<noCandidates; c++)
+			{
+				assertSame("Rank "+c, expected.get(c), topLocators.get(c));
+			}
+			assertEquals(expected.subList(0, Math.min(3, noCandidates)), batch.topLocators(scores, 3));
+		}
+	}
+
+	/**
+	 * A locator with some of the scored metadata missing, alternatives (" || ") and values that differ in case only
+	 */
+	private static Locator createLocator(Random random)
+	{
+		Locator locator=new Locator();
+		putMetadata(locator, random, "tag", TAGS[random.nextInt(TAGS.length)]);
+		putMetadata(locator, random, "class", word(random));
+		putMetadata(locator, random, "name", word(random));
+		putMetadata(locator, random, "id", word(random));
+		putMetadata(locator, random, "href", "http://site/"+word(random));
+		putMetadata(locator, random, "alt", word(random));
+		putMetadata(locator, random, "xpath", "/html/body/div["+(1+random.nextInt(3))+"]/a["+(1+random.nextInt(3))+"]");
+		putMetadata(locator, random, "idxpath", "//*[@id=\""+word(random)+"\"]/a");
+		putMetadata(locator, random, "is_button", random.nextBoolean() ? "yes" : "no");
+		putMetadata(locator, random, "location", random.nextInt(400)+","+random.nextInt(400));
+		putMetadata(locator, random, "area", ""+random.nextInt(5000));
+		putMetadata(locator, random, "shape", ""+random.nextInt(500));
+		putMetadata(locator, random, "visible_text", word(random));
+		putMetadata(locator, random, "neighbor_text", word(random)+" "+word(random));
+		return locator;
+	}
+
+	private static void putMetadata(Locator locator, Random random, String key, String value)
+	{
+		if(random.nextInt(5)>0)
+		{
+			locator.putMetadata(key, value);
+		}
+	}
+
+	private static String word(Random random)
+	{
+		String word=WORDS[random.nextInt(WORDS.length)];
+		if(random.nextInt(4)==0)
+		{
+			word+=" || "+WORDS[random.nextInt(WORDS.length)];
+		}
+		return word;
+	}
+}
@@ -1,25 +1,33 @@
 package org.example;
 
 import java.awt.Rectangle;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.io.OutputStreamWriter;
-import java.time.Duration;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 import org.json.simple.JSONArray;
@@ -31,14 +39,20 @@ import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.Keys;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.support.ui.ExpectedConditions;
-import org.openqa.selenium.support.ui.WebDriverWait;
 
 public class Similo {
-    private static final String[] LOCATORS = {"tag", "class", "name", "id", "href", "alt", "xpath", "idxpath", "is_button", "location", "area", "shape", "visible_text", "neighbor_text"};
+    static final String[] LOCATORS = {"tag", "class", "name", "id", "href", "alt", "xpath", "idxpath", "is_button", "location", "area", "shape", "visible_text", "neighbor_text"};
     private final double[] WEIGHTS = {1.5, 0.5, 1.5, 1.5, 0.5, 0.5, 0.5, 0.5, 0.5, 0.5, 0.5, 0.5, 1.5, 1.5};
-    private final static int[] SIMILARITY_FUNCTION = {0, 1, 0, 0, 1, 1, 1, 1, 0, 3, 2, 2, 1, 4};
+    final static int[] SIMILARITY_FUNCTION = {0, 1, 0, 0, 1, 1, 1, 1, 0, 3, 2, 2, 1, 4};
     private final static boolean[] IS_OVERPAPPING = {true, true, true, true, true, true, true, true, true, false, false, false, true, false};
+    private final static int[] LOCATOR_SLOTS = new int[LOCATORS.length];
+    private final static int LOCATION_SLOT = Locator.slotOf("location");
+
+    static {
+        for (int i = 0; i < LOCATORS.length; i++) {
+            LOCATOR_SLOTS[i] = Locator.slotOf(LOCATORS[i]);
+        }
+    }
 
     private final static int NO_THREADS = 20;
 
@@ -52,13 +66,52 @@ public class Similo {
     private final static String[] ckecksumPropertiesAll = {"tag", "class", "name", "href", "alt", "visible_text", "x", "y", "width", "height", "xpath"};    // src
     private static String[] checksumTags = {"h1", "h2", "h3", "h4", "h5", "h6", "label", "input", "textarea", "button", "select", "a", "span", "div", "li", "th", "tr", "td", "label", "svg"};    // img
 
+    private final static String QUIESCENCE_SCRIPT = "if (!window.similo_quiescence) { window.similo_quiescence = true; " +
+            "window.similo_pending = 0; window.domModifiedTime = Date.now(); " +
+            "var setDOMModifiedTime = function() {window.domModifiedTime = Date.now();}; " +
+            "window.addEventListener(\"beforeunload\", function(e) {window.new_page = 'true';}, false); " +
+            "if (window.XMLHttpRequest) { window.ajax_obj = []; window.origXMLHttpRequest = window.XMLHttpRequest; " +
+            "var origSend = window.XMLHttpRequest.prototype.send; " +
+            "window.XMLHttpRequest.prototype.send = function() { var xhr = this; var done = false; " +
+            "var finish = function() { if (!done) { done = true; window.similo_pending--; setDOMModifiedTime(); " +
+            "var index = window.ajax_obj.indexOf(xhr); if (index >= 0) {window.ajax_obj.splice(index, 1);}}}; " +
+            "window.ajax_obj.push(xhr); window.similo_pending++; setDOMModifiedTime(); xhr.addEventListener(\"loadend\", finish); " +
+            "try {return origSend.apply(xhr, arguments);} catch (e) {finish(); throw e;}};} " +
+            "if (window.fetch) { var origFetch = window.fetch; " +
+            "window.fetch = function() { var done = false; " +
+            "var finish = function() { if (!done) { done = true; window.similo_pending--; setDOMModifiedTime();}}; " +
+            "window.similo_pending++; setDOMModifiedTime(); " +
+            "try { var promise = origFetch.apply(this, arguments); promise.then(finish, finish); return promise;} catch (e) {finish(); throw e;}};} " +
+            "if (window.MutationObserver) { new MutationObserver(setDOMModifiedTime).observe(document.documentElement, " +
+            "{childList: true, subtree: true, attributes: true, characterData: true});}} ";
+
+    private static final String SESSION_STORAGE_SCRIPT = "var dump = function(storage) {var items = {}; " +
+            "for (var i = 0; i < storage.length; i++) {var key = storage.key(i); items[key] = storage.getItem(key);} return items;}; " +
+            "return JSON.stringify({url: location.href, localStorage: dump(localStorage), sessionStorage: dump(sessionStorage)});";
+
     private WebDriver webDriver = null;
     private String propertiesFolder = "locators";
     private int timeout = 30;
     private int stepDelay = 10;
     private int stableDelay = 3;
-    private WebDriverWait wait;
+    private boolean adaptiveStepDelay = false;
+    private int stepDelayPercentile = 90;
+    private int stepDelayMargin = 500;
+    private static final int MAX_STEP_DELAY_SAMPLES = 20;
+    private boolean useLocatorRepository = false;
+    private boolean reuseLocators = true;
+    private final LocatorArena locatorArena = new LocatorArena();
+    private boolean crashSafePersistence = false;
+    private LocatorStore locatorStore = null;
     private Properties latestProperties = null;
+    private ScheduledExecutorService driverExecutor = null;
+    private volatile Thread driverThread = null;
+    private volatile Snapshot latestSnapshot = null;
+    private volatile boolean lookAheadUsed = false;
+    // Guarded by this (set by lookAhead on the caller thread and used on the driver thread)
+    private Speculation speculation = null;
+    private Speculation activeSpeculation = null;
+    private long activeSpeculationTime = 0;
     private String elementsToExtract = "input,textarea,button,select,a,h1,h2,h3,h4,h5,h6,li,span,div,p,th,tr,td,label,svg";
 
     private int minScore = 100;
@@ -81,7 +134,6 @@ public class Similo {
         this.webDriver = webDriver;
         File folder = new File(propertiesFolder);
         folder.mkdirs();
-        wait = new WebDriverWait(webDriver, Duration.ofSeconds(timeout));
         javascript = loadTextFile("javascript.js");
     }
 
@@ -99,7 +151,6 @@ public class Similo {
         if (!isSuccess) {
             System.err.println("Cannot create folder");
         }
-        wait = new WebDriverWait(webDriver, Duration.ofSeconds(timeout));
         javascript = loadTextFile("javascript.js");
     }
 
@@ -117,7 +168,6 @@ public class Similo {
         if (!isSuccess) {
             System.err.println("Cannot create folder");
         }
-        wait = new WebDriverWait(webDriver, Duration.ofSeconds(timeout));
         javascript = loadTextFile(javascriptFilename);
     }
 
@@ -132,7 +182,7 @@ public class Similo {
     public WebElement findElement(String fileName) {
         fileName = stripString(fileName);
         File propFile = new File(propertiesFolder, fileName + ".properties");
-        if (!propFile.exists()) {
+        if (!propertiesExist(propFile)) {
             createPropertiesFile(propFile, fileName, null);
         }
         return findElement(propFile);
@@ -149,7 +199,7 @@ public class Similo {
     public boolean click(String fileName) {
         fileName = stripString(fileName);
         File propFile = new File(propertiesFolder, fileName + ".properties");
-        if (!propFile.exists()) {
+        if (!propertiesExist(propFile)) {
             String prioritizedClickTags = "a || button || input";
             createPropertiesFile(propFile, fileName, prioritizedClickTags);
         }
@@ -168,7 +218,7 @@ public class Similo {
     public boolean type(String fileName, String textToType) {
         fileName = stripString(fileName);
         File propFile = new File(propertiesFolder, fileName + ".properties");
-        if (!propFile.exists()) {
+        if (!propertiesExist(propFile)) {
             createPropertiesFile(propFile, fileName, prioritizedTypeTags);
         }
         return type(propFile, textToType);
@@ -186,7 +236,7 @@ public class Similo {
     public boolean enter(String fileName, String textToType) {
         fileName = stripString(fileName);
         File propFile = new File(propertiesFolder, fileName + ".properties");
-        if (!propFile.exists()) {
+        if (!propertiesExist(propFile)) {
             createPropertiesFile(propFile, fileName, prioritizedTypeTags);
         }
         return enter(propFile, textToType);
@@ -200,16 +250,19 @@ public class Similo {
      * @return A WebElement or null if not found
      */
     public WebElement findElement(File file) {
-        latestProperties = loadProperties(file);
-        Properties clone = (Properties) latestProperties.clone();
-        WebElement element = findElement(latestProperties);
-        if (element != null) {
-            if (!latestProperties.equals(clone)) {
-                saveProperties(file, latestProperties);
+        return onDriverThread(() -> {
+            latestProperties = loadProperties(file);
+            Properties clone = (Properties) latestProperties.clone();
+            activateSpeculation(file);
+            WebElement element = findElement(latestProperties);
+            if (element != null) {
+                if (!latestProperties.equals(clone)) {
+                    saveProperties(file, latestProperties);
+                }
+                return element;
             }
-            return element;
-        }
-        return null;
+            return null;
+        }, null);
     }
 
     /**
@@ -220,15 +273,18 @@ public class Similo {
      * @return true if clicked or false if click failed
      */
     public boolean click(File file) {
-        latestProperties = loadProperties(file);
-        Properties clone = (Properties) latestProperties.clone();
-        if (clickElement(latestProperties)) {
-            if (!latestProperties.equals(clone)) {
-                saveProperties(file, latestProperties);
+        return onDriverThread(() -> {
+            latestProperties = loadProperties(file);
+            Properties clone = (Properties) latestProperties.clone();
+            activateSpeculation(file);
+            if (clickElement(latestProperties)) {
+                if (!latestProperties.equals(clone)) {
+                    saveProperties(file, latestProperties);
+                }
+                return true;
             }
-            return true;
-        }
-        return false;
+            return false;
+        }, false);
     }
 
     /**
@@ -240,15 +296,18 @@ public class Similo {
      * @return true if types or false if type failed
      */
     public boolean type(File file, String textToType) {
-        latestProperties = loadProperties(file);
-        Properties clone = (Properties) latestProperties.clone();
-        if (typeElement(latestProperties, textToType, false)) {
-            if (!latestProperties.equals(clone)) {
-                saveProperties(file, latestProperties);
+        return onDriverThread(() -> {
+            latestProperties = loadProperties(file);
+            Properties clone = (Properties) latestProperties.clone();
+            activateSpeculation(file);
+            if (typeElement(latestProperties, textToType, false)) {
+                if (!latestProperties.equals(clone)) {
+                    saveProperties(file, latestProperties);
+                }
+                return true;
             }
-            return true;
-        }
-        return false;
+            return false;
+        }, false);
     }
 
     /**
@@ -260,15 +319,18 @@ public class Similo {
      * @return true if types or false if type failed
      */
     public boolean enter(File file, String textToType) {
-        latestProperties = loadProperties(file);
-        Properties clone = (Properties) latestProperties.clone();
-        if (typeElement(latestProperties, textToType, true)) {
-            if (!latestProperties.equals(clone)) {
-                saveProperties(file, latestProperties);
+        return onDriverThread(() -> {
+            latestProperties = loadProperties(file);
+            Properties clone = (Properties) latestProperties.clone();
+            activateSpeculation(file);
+            if (typeElement(latestProperties, textToType, true)) {
+                if (!latestProperties.equals(clone)) {
+                    saveProperties(file, latestProperties);
+                }
+                return true;
             }
-            return true;
-        }
-        return false;
+            return false;
+        }, false);
     }
 
     /**
@@ -284,7 +346,7 @@ public class Similo {
     public boolean check(String fileName) {
         fileName = stripString(fileName);
         File propFile = new File(propertiesFolder, fileName + ".properties");
-        if (!propFile.exists()) {
+        if (!propertiesExist(propFile)) {
             createPropertiesFile(propFile, fileName, null);
         }
         return check(propFile, "{" + defaultProperty + "}=" + fileName);
@@ -304,7 +366,7 @@ public class Similo {
     public boolean check(String fileName, String validExpression) {
         fileName = stripString(fileName);
         File propFile = new File(propertiesFolder, fileName + ".properties");
-        if (!propFile.exists()) {
+        if (!propertiesExist(propFile)) {
             createPropertiesFile(propFile, fileName, null);
         }
         return check(propFile, validExpression);
@@ -354,58 +416,131 @@ public class Similo {
      * @return A WebElement or null if not found
      */
     public WebElement findElement(Properties properties) {
-        stepDelay(properties);
+        return onDriverThread(() -> {
+            stepDelay(properties);
+
+            Locator locator = new Locator(properties);
+            long startTime = System.currentTimeMillis();
+            for (int i = 0; i < 1000; i++) {
+                List<Locator> bestMatchingLocators = findBestMatchingLocators(locator);
+                WebElement webElement = findBestMatchingElement(locator, bestMatchingLocators);
+                if (webElement != null) {
+                    return webElement;
+                }
+                delay(1000);
+                long duration = (System.currentTimeMillis() - startTime) / 1000;
+                if (duration >= timeout) {
+                    return null;
+                }
+            }
+            return null;
+        }, null);
+    }
 
-        Locator locator = new Locator(properties);
-        long startTime = System.currentTimeMillis();
-        for (int i = 0; i < 1000; i++) {
-            List<Locator> bestMatchingLocators = findBestMatchingLocators(locator);
-            if (bestMatchingLocators != null && bestMatchingLocators.size() > 0) {
-                Locator bestMatchingLocator = bestMatchingLocators.get(0);
-
-                try {
-                    String xpath = (String) bestMatchingLocator.getMetadata("xpath");
-                    if (xpath != null && xpath.trim().length() > 0) {
-                        WebElement element = webDriver.findElement(By.xpath(xpath));
-                        if (element != null) {
-                            WebElement webElement = wait.until(ExpectedConditions.visibilityOf(element));
+    public boolean clickElement(Properties properties) {
+        return onDriverThread(() -> {
+            stepDelay(properties);
+
+            Locator locator = new Locator(properties);
+            long startTime = System.currentTimeMillis();
+            for (int i = 0; i < 1000; i++) {
+                List<Locator> bestMatchingLocators = findBestMatchingLocators(locator);
+                if (clickBestMatchingElement(locator, bestMatchingLocators)) {
+                    return true;
+                }
+                delay(1000);
+                long duration = (System.currentTimeMillis() - startTime) / 1000;
+                if (duration >= timeout) {
+                    return false;
+                }
+            }
+            return false;
+        }, false);
+    }
 
-                            // Repair if needed
-                            repairLocator(locator, bestMatchingLocator);
+    public boolean typeElement(Properties properties, String textToType, boolean addReturn) {
+        return onDriverThread(() -> {
+            stepDelay(properties);
+
+            Locator locator = new Locator(properties);
+            long startTime = System.currentTimeMillis();
+            for (int i = 0; i < 1000; i++) {
+                List<Locator> bestMatchingLocators = findBestMatchingLocators(locator);
+                if (typeBestMatchingElement(locator, bestMatchingLocators, textToType, addReturn)) {
+                    return true;
+                }
+                delay(1000);
+                long duration = (System.currentTimeMillis() - startTime) / 1000;
+                if (duration >= timeout) {
+                    return false;
+                }
+            }
+            return false;
+        }, false);
+    }
 
-                            // Update the GUI state checksum
-//							String checksum=""+createGuiStateChecksum();
-//							properties.setProperty("gui_state_checksum", checksum);
+    /**
+     * Get the best matching, visible WebElement and repair the locator if found
+     *
+     * @param locator              The locator to repair
+     * @param bestMatchingLocators Candidate locators in order of similarity (or null)
+     * @return A WebElement or null if not found
+     */
+    private WebElement findBestMatchingElement(Locator locator, List<Locator> bestMatchingLocators) {
+        if (bestMatchingLocators != null && bestMatchingLocators.size() > 0) {
+            Locator bestMatchingLocator = bestMatchingLocators.get(0);
 
-                            return webElement;
-                        }
+            try {
+                String xpath = (String) bestMatchingLocator.getMetadata("xpath");
+                if (xpath != null && xpath.trim().length() > 0) {
+                    WebElement element = webDriver.findElement(By.xpath(xpath));
+                    // If not visible yet the caller tries again with a new extraction (does not block the driver thread)
+                    if (element != null && element.isDisplayed()) {
+                        // Repair if needed
+                        repairLocator(locator, bestMatchingLocator);
+
+                        // Update the GUI state checksum
+//						String checksum=""+createGuiStateChecksum();
+//						properties.setProperty("gui_state_checksum", checksum);
+
+                        return element;
                     }
-                } catch (Exception e) {
                 }
-            }
-            delay(1000);
-            long duration = (System.currentTimeMillis() - startTime) / 1000;
-            if (duration >= timeout) {
-                return null;
+            } catch (Exception e) {
             }
         }
         return null;
     }
 
-    public boolean clickElement(Properties properties) {
-        stepDelay(properties);
+    /**
+     * Click on the candidate elements in order of similarity and repair the locator if clicked
+     *
+     * @param locator              The locator to repair
+     * @param bestMatchingLocators Candidate locators in order of similarity (or null)
+     * @return true if clicked
+     */
+    private boolean clickBestMatchingElement(Locator locator, List<Locator> bestMatchingLocators) {
+        if (bestMatchingLocators != null) {
+            // Try to click on elements in order of similarity
+            for (Locator bestMatchingLocator : bestMatchingLocators) {
+                String xpath = (String) bestMatchingLocator.getMetadata("xpath");
+                if (xpath != null && xpath.trim().length() > 0) {
+                    WebElement element = webDriver.findElement(By.xpath(xpath));
+                    if (element != null) {
+                        try {
+//							WebElement webElement=wait.until(ExpectedConditions.visibilityOf(element));
+                            element.click();
 
-        Locator locator = new Locator(properties);
-        long startTime = System.currentTimeMillis();
-        for (int i = 0; i < 1000; i++) {
-            List<Locator> bestMatchingLocators = findBestMatchingLocators(locator);
-            if (bestMatchingLocators != null) {
-                // Try to click on elements in order of similarity
-                for (Locator bestMatchingLocator : bestMatchingLocators) {
-                    String xpath = (String) bestMatchingLocator.getMetadata("xpath");
-                    if (xpath != null && xpath.trim().length() > 0) {
-                        WebElement element = webDriver.findElement(By.xpath(xpath));
-                        if (element != null) {
+                            // Repair if needed
+                            repairLocator(locator, bestMatchingLocator);
+
+                            // Update the GUI state checksum
+//							String checksum=""+createGuiStateChecksum();
+//							properties.setProperty("gui_state_checksum", checksum);
+
+                            return true;
+                        } catch (Exception e) {
+                            // Try again
                             try {
 //								WebElement webElement=wait.until(ExpectedConditions.visibilityOf(element));
                                 element.click();
@@ -418,50 +553,49 @@ public class Similo {
 //								properties.setProperty("gui_state_checksum", checksum);
 
                                 return true;
-                            } catch (Exception e) {
-                                // Try again
-                                try {
-//									WebElement webElement=wait.until(ExpectedConditions.visibilityOf(element));
-                                    element.click();
-
-                                    // Repair if needed
-                                    repairLocator(locator, bestMatchingLocator);
-
-                                    // Update the GUI state checksum
-//									String checksum=""+createGuiStateChecksum();
-//									properties.setProperty("gui_state_checksum", checksum);
-
-                                    return true;
-                                } catch (Exception ex) {
-                                }
+                            } catch (Exception ex) {
                             }
                         }
                     }
                 }
             }
-            delay(1000);
-            long duration = (System.currentTimeMillis() - startTime) / 1000;
-            if (duration >= timeout) {
-                return false;
-            }
         }
         return false;
     }
 
-    public boolean typeElement(Properties properties, String textToType, boolean addReturn) {
-        stepDelay(properties);
+    /**
+     * Type into the candidate elements in order of similarity and repair the locator if typed
+     *
+     * @param locator              The locator to repair
+     * @param bestMatchingLocators Candidate locators in order of similarity (or null)
+     * @param textToType           The text to type in the located web element
+     * @param addReturn            true if a return should be added at the end
+     * @return true if typed
+     */
+    private boolean typeBestMatchingElement(Locator locator, List<Locator> bestMatchingLocators, String textToType, boolean addReturn) {
+        if (bestMatchingLocators != null) {
+            // Try to click on elements in order of similarity
+            for (Locator bestMatchingLocator : bestMatchingLocators) {
+                String xpath = (String) bestMatchingLocator.getMetadata("xpath");
+                if (xpath != null && xpath.trim().length() > 0) {
+                    WebElement element = webDriver.findElement(By.xpath(xpath));
+                    if (element != null) {
+                        try {
+                            element.sendKeys(textToType);
+                            if (addReturn) {
+                                element.sendKeys(Keys.RETURN);
+                            }
 
-        Locator locator = new Locator(properties);
-        long startTime = System.currentTimeMillis();
-        for (int i = 0; i < 1000; i++) {
-            List<Locator> bestMatchingLocators = findBestMatchingLocators(locator);
-            if (bestMatchingLocators != null) {
-                // Try to click on elements in order of similarity
-                for (Locator bestMatchingLocator : bestMatchingLocators) {
-                    String xpath = (String) bestMatchingLocator.getMetadata("xpath");
-                    if (xpath != null && xpath.trim().length() > 0) {
-                        WebElement element = webDriver.findElement(By.xpath(xpath));
-                        if (element != null) {
+                            // Repair if needed
+                            repairLocator(locator, bestMatchingLocator);
+
+                            // Update the GUI state checksum
+//							String checksum=""+createGuiStateChecksum();
+//							properties.setProperty("gui_state_checksum", checksum);
+
+                            return true;
+                        } catch (Exception e) {
+                            // Try again
                             try {
                                 element.sendKeys(textToType);
                                 if (addReturn) {
@@ -476,36 +610,227 @@ public class Similo {
 //								properties.setProperty("gui_state_checksum", checksum);
 
                                 return true;
-                            } catch (Exception e) {
-                                // Try again
-                                try {
-                                    element.sendKeys(textToType);
-                                    if (addReturn) {
-                                        element.sendKeys(Keys.RETURN);
-                                    }
+                            } catch (Exception ex) {
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
 
-                                    // Repair if needed
-                                    repairLocator(locator, bestMatchingLocator);
+    /**
+     * Execute the steps of a plan in order.
+     * The page is extracted once per page state and all the targets of that state are scored against the same extraction.
+     * A click or an enter ends the page state, as does a step whose GUI state (gui_state_common) is not part of the extraction.
+     * A step that can't be executed against the extraction falls back to the single step method (with a new extraction).
+     *
+     * @param plan The steps to execute
+     * @return true if all the steps succeeded or false when the first step failed
+     */
+    public boolean execute(ActionPlan plan) {
+        return onDriverThread(() -> {
+            List<ActionPlan.Step> steps = plan.getSteps();
+            int index = 0;
+            while (index < steps.size()) {
+                // Wait for the GUI state of the first step and extract the page once
+                List<ActionPlan.Step> stateSteps = new ArrayList<>();
+                List<Properties> stateProperties = new ArrayList<>();
+                List<Properties> loadedProperties = new ArrayList<>();
+                ActionPlan.Step firstStep = steps.get(index);
+                Properties firstProperties = loadProperties(getPropertiesFile(firstStep));
+                loadedProperties.add((Properties) firstProperties.clone());
+                stepDelay(firstProperties);
+                stateSteps.add(firstStep);
+                stateProperties.add(firstProperties);
+
+                List<Locator> candidateLocators = extractLocators(getElementsToExtract());
+                Set<Long> stateSet = candidateLocators != null ? createStateSet(candidateLocators) : null;
+
+                // Collect the following steps that belong to the same GUI state
+                int nextIndex = index + 1;
+                if (!firstStep.isChangingState()) {
+                    while (nextIndex < steps.size() && stateSet != null) {
+                        ActionPlan.Step step = steps.get(nextIndex);
+                        Properties properties = loadProperties(getPropertiesFile(step));
+                        Properties clone = (Properties) properties.clone();
+                        String guiStateCommon = properties.getProperty("gui_state_common");
+                        if (guiStateCommon != null && guiStateCommon.length() > 0) {
+                            if (!stateSet.containsAll(stringToSet(guiStateCommon))) {
+                                // Another GUI state
+                                break;
+                            }
+                        } else if (!stateSet.isEmpty()) {
+                            properties.setProperty("gui_state_common", setToString(stateSet));
+                        }
+                        stateSteps.add(step);
+                        stateProperties.add(properties);
+                        loadedProperties.add(clone);
+                        nextIndex++;
+                        if (step.isChangingState()) {
+                            break;
+                        }
+                    }
+                }
 
-                                    // Update the GUI state checksum
-//									String checksum=""+createGuiStateChecksum();
-//									properties.setProperty("gui_state_checksum", checksum);
+                // Score all the targets against the same extraction
+                List<Locator> targetLocators = new ArrayList<>();
+                List<List<Locator>> rankings = new ArrayList<>();
+                for (Properties properties : stateProperties) {
+                    Locator targetLocator = new Locator(properties);
+                    targetLocators.add(targetLocator);
+                    rankings.add(rankLocators(targetLocator, candidateLocators));
+                }
 
-                                    return true;
-                                } catch (Exception ex) {
-                                }
-                            }
+                // Execute the steps
+                for (int i = 0; i < stateSteps.size(); i++) {
+                    ActionPlan.Step step = stateSteps.get(i);
+                    Properties properties = stateProperties.get(i);
+                    // As loaded (the changes since then are saved)
+                    Properties clone = loadedProperties.get(i);
+                    File file = getPropertiesFile(step);
+                    latestProperties = properties;
+
+                    if (executeStep(step, targetLocators.get(i), rankings.get(i), properties)) {
+                        if (!properties.equals(clone)) {
+                            saveProperties(file, properties);
                         }
+                        if (!step.isSuccess()) {
+                            // Found but not valid
+                            return false;
+                        }
+                    } else {
+                        // Not found in the extraction - run the step on its own
+                        if (executeStep(step, file, properties) && !properties.equals(clone)) {
+                            saveProperties(file, properties);
+                        }
+                        if (!step.isSuccess()) {
+                            return false;
+                        }
+                        // The extraction may be outdated
+                        nextIndex = index + i + 1;
+                        break;
                     }
                 }
+                index = nextIndex;
             }
-            delay(1000);
-            long duration = (System.currentTimeMillis() - startTime) / 1000;
-            if (duration >= timeout) {
-                return false;
+            return true;
+        }, false);
+    }
+
+    private boolean executeStep(ActionPlan.Step step, Locator targetLocator, List<Locator> bestMatchingLocators, Properties properties) {
+        if (bestMatchingLocators == null) {
+            return false;
+        }
+        try {
+            switch (step.getAction()) {
+                case FIND:
+                case CHECK:
+                    WebElement element = findBestMatchingElement(targetLocator, bestMatchingLocators);
+                    if (element == null) {
+                        return false;
+                    }
+                    step.setElement(element);
+                    step.setSuccess(step.getAction() == ActionPlan.Action.FIND || isValid(getValidExpression(step), properties));
+                    return true;
+                case CLICK:
+                    step.setSuccess(clickBestMatchingElement(targetLocator, bestMatchingLocators));
+                    return step.isSuccess();
+                case TYPE:
+                case ENTER:
+                    step.setSuccess(typeBestMatchingElement(targetLocator, bestMatchingLocators, step.getText(), step.getAction() == ActionPlan.Action.ENTER));
+                    return step.isSuccess();
+                default:
+                    return false;
             }
+        } catch (Exception e) {
+            return false;
         }
-        return false;
+    }
+
+    /**
+     * Execute a step on its own (with a new extraction), same as the single step methods but with the properties in memory
+     *
+     * @param properties Contains the locators (will be updated if required)
+     * @return true if the element was found (the step may still have failed the check)
+     */
+    private boolean executeStep(ActionPlan.Step step, File file, Properties properties) {
+        latestProperties = properties;
+        activateSpeculation(file);
+        switch (step.getAction()) {
+            case FIND:
+            case CHECK:
+                step.setElement(findElement(properties));
+                if (step.getElement() == null) {
+                    step.setSuccess(false);
+                    return false;
+                }
+                step.setSuccess(step.getAction() == ActionPlan.Action.FIND || isValid(getValidExpression(step), properties));
+                return true;
+            case CLICK:
+                step.setSuccess(clickElement(properties));
+                break;
+            case TYPE:
+                step.setSuccess(typeElement(properties, step.getText(), false));
+                break;
+            case ENTER:
+                step.setSuccess(typeElement(properties, step.getText(), true));
+                break;
+            default:
+                step.setSuccess(false);
+        }
+        return step.isSuccess();
+    }
+
+    private String getValidExpression(ActionPlan.Step step) {
+        if (step.getValidExpression() != null) {
+            return step.getValidExpression();
+        }
+        return "{" + defaultProperty + "}=" + stripString(step.getFileName());
+    }
+
+    /**
+     * Get the properties file of a step (created if missing)
+     */
+    private File getPropertiesFile(ActionPlan.Step step) {
+        switch (step.getAction()) {
+            case CLICK:
+                return getPropertiesFile(step.getFileName(), "a || button || input");
+            case TYPE:
+            case ENTER:
+                return getPropertiesFile(step.getFileName(), prioritizedTypeTags);
+            default:
+                return getPropertiesFile(step.getFileName(), null);
+        }
+    }
+
+    /**
+     * Get the properties file for a file name (created if missing)
+     */
+    private File getPropertiesFile(String fileName, String prioritizedTags) {
+        fileName = stripString(fileName);
+        File propFile = new File(propertiesFolder, fileName + ".properties");
+        if (!propertiesExist(propFile)) {
+            createPropertiesFile(propFile, fileName, prioritizedTags);
+        }
+        return propFile;
+    }
+
+    /**
+     * Rank the candidates (without changing the order of candidateLocators)
+     *
+     * @return A new list with the candidates in order of similarity or null if there are no candidates
+     */
+    private List<Locator> rankLocators(Locator targetLocator, List<Locator> candidateLocators) {
+        if (candidateLocators == null) {
+            return null;
+        }
+        setLocationArea(targetLocator);
+        similoCalculation(targetLocator, candidateLocators);
+        List<Locator> bestMatchingLocators = new ArrayList<>(candidateLocators);
+        Collections.sort(bestMatchingLocators);
+        return bestMatchingLocators;
     }
 
     private List<Locator> findBestMatchingLocators(Locator targetLocator) {
@@ -513,21 +838,16 @@ public class Similo {
             return null;
         }
         try {
-            String xStr = (String) targetLocator.getMetadata("x");
-            String yStr = (String) targetLocator.getMetadata("y");
-            String widthStr = (String) targetLocator.getMetadata("width");
-            String heightStr = (String) targetLocator.getMetadata("height");
-            if (xStr != null && yStr != null && widthStr != null && heightStr != null) {
-                // Set the location area to speed up comparisons
-                int x = string2Int(xStr);
-                int y = string2Int(yStr);
-                int width = string2Int(widthStr);
-                int height = string2Int(heightStr);
-                targetLocator.setLocationArea(new Rectangle(x, y, width, height));
+            setLocationArea(targetLocator);
+
+            List<Locator> speculatedLocators = useSpeculation();
+            if (speculatedLocators != null) {
+                return speculatedLocators;
             }
 
             String elementsToExtract = getElementsToExtract();
-            List<Locator> candidateLocators = getLocators(elementsToExtract);
+            List<Locator> candidateLocators = extractLocators(elementsToExtract);
+            publishSnapshot(candidateLocators, null, reuseLocators);
             List<Locator> bestMatchingLocators = similo(targetLocator, candidateLocators);
             return bestMatchingLocators;
         } catch (Exception e) {
@@ -536,78 +856,548 @@ public class Similo {
         return null;
     }
 
-    private String object2String(Object o) {
-        if (o == null) {
+    /**
+     * Score the locator of the next step in the background against the latest extraction (look-ahead).
+     * The ranking is used by the next findElement, click, type or enter with the same file if the GUI state set
+     * at that time is the same as the one of the extraction, otherwise it is discarded.
+     * Does nothing if the properties file does not exist yet.
+     *
+     * The first look-ahead has nothing to score (the extractions are only kept for look-ahead once it is used).
+     *
+     * @param fileName Name of the file that contains the locators (excluding the .properties extension).
+     * @return A future ranking of the candidates or null if there is nothing to score
+     */
+    public CompletableFuture<List<Locator>> lookAhead(String fileName) {
+        return lookAhead(new File(propertiesFolder, stripString(fileName) + ".properties"));
+    }
+
+    /**
+     * Score the locator of the next step in the background against the latest extraction (look-ahead).
+     *
+     * @param file Path to a properties file that contains the locators
+     * @return A future ranking of the candidates or null if there is nothing to score
+     */
+    public CompletableFuture<List<Locator>> lookAhead(File file) {
+        lookAheadUsed = true;
+        Snapshot snapshot = latestSnapshot;
+        if (snapshot == null || snapshot.locators == null || !propertiesExist(file)) {
             return null;
         }
-        if (o instanceof String) {
-            String s = (String) o;
-            return s.trim();
-        } else if (o instanceof Integer) {
-            Integer i = (Integer) o;
-            return i.toString();
+        Properties properties = loadProperties(file);
+        if (properties == null) {
+            return null;
         }
-        if (o instanceof Double) {
-            Double d = (Double) o;
-            int i = d.intValue();
-            return "" + i;
-        } else if (o instanceof Long) {
-            Long l = (Long) o;
-            return l.toString();
+        // Score copies to leave the snapshot unchanged for other look-aheads
+        List<Locator> candidateLocators = new ArrayList<>();
+        for (Locator locator : snapshot.locators) {
+            candidateLocators.add(locator.clone());
         }
-        return null;
+        CompletableFuture<Set<Long>> stateSet = snapshot.stateSet != null ?
+                CompletableFuture.completedFuture(snapshot.stateSet) : CompletableFuture.supplyAsync(() -> createStateSet(candidateLocators));
+        // Rank after the state set is created since the ranking changes the copies
+        CompletableFuture<List<Locator>> ranking = stateSet.thenApplyAsync(set -> rankLocators(new Locator(properties), candidateLocators));
+        synchronized (this) {
+            speculation = new Speculation(file.getAbsoluteFile(), stateSet, ranking);
+        }
+        return ranking;
     }
 
-    private int string2Int(String text) {
-        try {
-            return Integer.parseInt(text);
-        } catch (Exception e) {
-            return 0;
+    /**
+     * Publish the latest extraction to lookAhead (called on the thread that extracts).
+     * The locators are copied if the next extraction reuses them, so that the snapshot never changes after it is published.
+     *
+     * @param locators The extracted locators (or null)
+     * @param stateSet The GUI state set of the locators or null if not created
+     * @param reused   true if the locators are reused by the next extraction
+     */
+    private void publishSnapshot(List<Locator> locators, Set<Long> stateSet, boolean reused) {
+        List<Locator> snapshotLocators = null;
+        if (locators != null && lookAheadUsed) {
+            if (reused) {
+                snapshotLocators = new ArrayList<>(locators.size());
+                for (Locator locator : locators) {
+                    snapshotLocators.add(locator.clone());
+                }
+            } else {
+                snapshotLocators = locators;
+            }
         }
+        latestSnapshot = new Snapshot(snapshotLocators, stateSet);
     }
 
-    private long string2Long(String text) {
-        try {
-            return Long.parseLong(text);
-        } catch (Exception e) {
-            return 0;
+    /**
+     * Make the look-ahead for the file (if any) available to the next findBestMatchingLocators
+     */
+    private synchronized void activateSpeculation(File file) {
+        Speculation nextSpeculation = speculation;
+        speculation = null;
+        if (nextSpeculation != null && nextSpeculation.file.equals(file.getAbsoluteFile())) {
+            activeSpeculation = nextSpeculation;
+            activeSpeculationTime = System.currentTimeMillis();
+        } else {
+            activeSpeculation = null;
         }
     }
 
     /**
-     * Delay the thread a number of milliseconds
+     * Get the look-ahead ranking if the GUI state set is the same as when it was scored
      *
-     * @param milliseconds
+     * @return The ranked candidates or null if there is no ranking or the GUI state has changed
      */
-    public void delay(int milliseconds) {
+    private List<Locator> useSpeculation() {
+        Speculation usedSpeculation;
+        long usedSpeculationTime;
+        synchronized (this) {
+            usedSpeculation = activeSpeculation;
+            usedSpeculationTime = activeSpeculationTime;
+            activeSpeculation = null;
+        }
+        Snapshot snapshot = latestSnapshot;
+        if (usedSpeculation == null || snapshot == null || snapshot.stateSet == null || snapshot.time < usedSpeculationTime) {
+            // No look-ahead or no state set since the step started
+            return null;
+        }
         try {
-            Thread.sleep(milliseconds);
-        } catch (InterruptedException e) {
+            if (snapshot.stateSet.equals(usedSpeculation.stateSet.join())) {
+                return usedSpeculation.ranking.join();
+            }
+        } catch (Exception e) {
         }
+        return null;
     }
 
-    private void repairLocator(Locator locator, Locator repairFromWidget) {
-        List<String> keys = repairFromWidget.getMetadataKeys();
+    /**
+     * The latest extracted locators (a copy detached from the LocatorArena, or null until lookAhead is used) and their GUI state set (or null if not created)
+     */
+    private static class Snapshot {
+        private final List<Locator> locators;
+        private final Set<Long> stateSet;
+        private final long time = System.currentTimeMillis();
 
-        // Check if metadata should be ignored
-        for (String key : keys) {
-            String value1 = locator.getMetadata(key);
-            String value2 = repairFromWidget.getMetadata(key);
-            if (value1 == null || !value1.equals(value2)) {
-                // Is missing or has changed
-                if (locator.isRepairedMetadata(key)) {
-                    // Repaired last time - time to ignore
-                    locator.addIgnoredMetadata(key);
-                }
-            }
+        private Snapshot(List<Locator> locators, Set<Long> stateSet) {
+            this.locators = locators;
+            this.stateSet = stateSet;
         }
+    }
 
-        // Check if metadata should be repaired
-        locator.clearRepairedMetadata();
-        for (String key : keys) {
-            String value1 = locator.getMetadata(key);
-            String value2 = repairFromWidget.getMetadata(key);
-            if (value1 == null) {
+    /**
+     * A ranking of a locator scored ahead of time and the GUI state set it was scored in
+     */
+    private static class Speculation {
+        private final File file;
+        private final CompletableFuture<Set<Long>> stateSet;
+        private final CompletableFuture<List<Locator>> ranking;
+
+        private Speculation(File file, CompletableFuture<Set<Long>> stateSet, CompletableFuture<List<Locator>> ranking) {
+            this.file = file;
+            this.stateSet = stateSet;
+            this.ranking = ranking;
+        }
+    }
+
+    private void setLocationArea(Locator targetLocator) {
+        String xStr = (String) targetLocator.getMetadata("x");
+        String yStr = (String) targetLocator.getMetadata("y");
+        String widthStr = (String) targetLocator.getMetadata("width");
+        String heightStr = (String) targetLocator.getMetadata("height");
+        if (xStr != null && yStr != null && widthStr != null && heightStr != null) {
+            // Set the location area to speed up comparisons
+            int x = string2Int(xStr);
+            int y = string2Int(yStr);
+            int width = string2Int(widthStr);
+            int height = string2Int(heightStr);
+            targetLocator.setLocationArea(new Rectangle(x, y, width, height));
+        }
+    }
+
+    /**
+     * Find a WebElement without blocking the caller (see findElement).
+     * Browser calls are made on an executor per driver while parsing and scoring run in the common pool.
+     * The blocking methods (findElement, click, type, enter and execute) run on the same executor and can be mixed with this one.
+     *
+     * @param fileName Name of the file that contains the locators (excluding the .properties extension).
+     * @return A future WebElement (null if not found)
+     */
+    public CompletableFuture<WebElement> findElementAsync(String fileName) {
+        return CompletableFuture.supplyAsync(() -> getPropertiesFile(fileName, null), getDriverExecutor())
+                .thenCompose(this::findElementAsync);
+    }
+
+    /**
+     * Find a WebElement without blocking the caller (see findElement).
+     *
+     * @param file Path to a properties file that contains the locators
+     * @return A future WebElement (null if not found)
+     */
+    public CompletableFuture<WebElement> findElementAsync(File file) {
+        return locateAsync(file, (locator, bestMatchingLocators) -> findBestMatchingElement(locator, bestMatchingLocators));
+    }
+
+    /**
+     * Click a WebElement without blocking the caller (see click).
+     *
+     * @param fileName Name of the file that contains the locators (excluding the .properties extension).
+     * @return A future that is true if clicked or false if click failed
+     */
+    public CompletableFuture<Boolean> clickAsync(String fileName) {
+        return CompletableFuture.supplyAsync(() -> getPropertiesFile(fileName, "a || button || input"), getDriverExecutor())
+                .thenCompose(this::clickAsync);
+    }
+
+    /**
+     * Click a WebElement without blocking the caller (see click).
+     *
+     * @param file Path to a properties file that contains the locators
+     * @return A future that is true if clicked or false if click failed
+     */
+    public CompletableFuture<Boolean> clickAsync(File file) {
+        return locateAsync(file, (locator, bestMatchingLocators) -> clickBestMatchingElement(locator, bestMatchingLocators) ? true : null)
+                .thenApply(clicked -> clicked != null);
+    }
+
+    /**
+     * Type a text into a WebElement without blocking the caller (see type).
+     *
+     * @param fileName   Name of the file that contains the locators (excluding the .properties extension).
+     * @param textToType The text to type in the located web element
+     * @return A future that is true if typed or false if type failed
+     */
+    public CompletableFuture<Boolean> typeAsync(String fileName, String textToType) {
+        return CompletableFuture.supplyAsync(() -> getPropertiesFile(fileName, prioritizedTypeTags), getDriverExecutor())
+                .thenCompose(file -> typeAsync(file, textToType, false));
+    }
+
+    /**
+     * Enter a text (adds a return at the end) into a WebElement without blocking the caller (see enter).
+     *
+     * @param fileName   Name of the file that contains the locators (excluding the .properties extension).
+     * @param textToType The text to type in the located web element
+     * @return A future that is true if typed or false if type failed
+     */
+    public CompletableFuture<Boolean> enterAsync(String fileName, String textToType) {
+        return CompletableFuture.supplyAsync(() -> getPropertiesFile(fileName, prioritizedTypeTags), getDriverExecutor())
+                .thenCompose(file -> typeAsync(file, textToType, true));
+    }
+
+    /**
+     * Type a text into a WebElement without blocking the caller (see type and enter).
+     *
+     * @param file       Path to a properties file that contains the locators
+     * @param textToType The text to type in the located web element
+     * @param addReturn  true to add a return at the end
+     * @return A future that is true if typed or false if type failed
+     */
+    public CompletableFuture<Boolean> typeAsync(File file, String textToType, boolean addReturn) {
+        return locateAsync(file, (locator, bestMatchingLocators) -> typeBestMatchingElement(locator, bestMatchingLocators, textToType, addReturn) ? true : null)
+                .thenApply(typed -> typed != null);
+    }
+
+    /**
+     * Stop the executor used by the asynchronous methods and write the changed locators.
+     * Waits for the queued browser calls before the locators are written.
+     * The blocking methods throw IllegalStateException if called from another thread while closing.
+     */
+    public void close() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = driverExecutor;
+        }
+        if (executor != null) {
+            // New tasks are rejected until the executor is removed
+            executor.shutdown();
+            try {
+                executor.awaitTermination(timeout + stepDelay, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                if (driverExecutor == executor) {
+                    driverExecutor = null;
+                }
+            }
+        }
+        LocatorStore store = getStore();
+        if (store != null) {
+            store.flush();
+        }
+    }
+
+    private synchronized ScheduledExecutorService getDriverExecutor() {
+        if (driverExecutor == null) {
+            // WebDriver is not thread safe - one thread per driver
+            driverExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "similo-driver");
+                thread.setDaemon(true);
+                driverThread = thread;
+                return thread;
+            });
+        }
+        return driverExecutor;
+    }
+
+    /**
+     * Run a call of the blocking methods on the driver thread so that it is not mixed with the browser calls
+     * of the asynchronous methods (WebDriver is not thread safe). Runs directly if already on the driver thread.
+     *
+     * @param failed The result if the caller is interrupted
+     * @throws IllegalStateException If the executor is closed
+     */
+    private <T> T onDriverThread(Supplier<T> call, T failed) {
+        if (Thread.currentThread() == driverThread) {
+            return call.get();
+        }
+        try {
+            return getDriverExecutor().submit(call::get).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failed;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            return failed;
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("Similo is closed", e);
+        }
+    }
+
+    /**
+     * Wait for the GUI state, locate the element and apply the action to it.
+     * The properties file is saved if the locator has been repaired.
+     *
+     * @param action Applied (on the driver thread) to the ranked candidates and returns null if not successful
+     * @return A future result of the action or null if not successful within the timeout
+     */
+    private <T> CompletableFuture<T> locateAsync(File file, BiFunction<Locator, List<Locator>, T> action) {
+        return CompletableFuture.supplyAsync(() -> loadProperties(file), getDriverExecutor())
+                .thenCompose(properties -> {
+                    Properties clone = (Properties) properties.clone();
+                    return stepDelayAsync(properties)
+                            .thenCompose(inState -> locateAsync(new Locator(properties), action))
+                            .thenApply(result -> {
+                                if (result != null && !properties.equals(clone)) {
+                                    saveProperties(file, properties);
+                                }
+                                return result;
+                            });
+                });
+    }
+
+    private <T> CompletableFuture<T> locateAsync(Locator locator, BiFunction<Locator, List<Locator>, T> action) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        setLocationArea(locator);
+        locateAttemptAsync(locator, action, extractElementsAsync(0), System.currentTimeMillis(), result);
+        return result;
+    }
+
+    /**
+     * One attempt to locate an element.
+     * The next extraction is scheduled before this one is parsed and scored, and cancelled if this attempt succeeds.
+     */
+    private <T> void locateAttemptAsync(Locator locator, BiFunction<Locator, List<Locator>, T> action, CompletableFuture<String> extraction, long startTime, CompletableFuture<T> result) {
+        extraction.whenComplete((json, error) -> {
+            CompletableFuture<String> nextExtraction = extractElementsAsync(1000);
+            CompletableFuture.supplyAsync(() -> {
+                        List<Locator> candidateLocators = json != null ? parseLocators(json) : null;
+                        return candidateLocators != null ? similo(locator, candidateLocators) : null;
+                    })
+                    .thenApplyAsync(bestMatchingLocators -> action.apply(locator, bestMatchingLocators), getDriverExecutor())
+                    .whenComplete((value, actionError) -> {
+                        long duration = (System.currentTimeMillis() - startTime) / 1000;
+                        if (value != null) {
+                            nextExtraction.cancel(false);
+                            result.complete(value);
+                        } else if (duration >= timeout) {
+                            nextExtraction.cancel(false);
+                            result.complete(null);
+                        } else {
+                            locateAttemptAsync(locator, action, nextExtraction, startTime, result);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Extract the visible elements on the driver thread after a delay
+     *
+     * @return A future JSON array (null if the extraction failed), cancel to skip the extraction
+     */
+    private CompletableFuture<String> extractElementsAsync(long delayMillis) {
+        CompletableFuture<String> extraction = new CompletableFuture<>();
+        ScheduledFuture<?> scheduled = getDriverExecutor().schedule(() -> {
+            if (!extraction.isDone()) {
+                extraction.complete(extractElements(getElementsToExtract()));
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+        extraction.whenComplete((json, error) -> {
+            if (extraction.isCancelled()) {
+                scheduled.cancel(false);
+            }
+        });
+        return extraction;
+    }
+
+    /**
+     * Same as stepDelay but the driver thread is released between the polls of the GUI state
+     *
+     * @return A future that is true if in the expected GUI state
+     */
+    private CompletableFuture<Boolean> stepDelayAsync(Properties properties) {
+        String guiStateCommon = properties.getProperty("gui_state_common");
+        long fullWait = stepDelay * 1000L;
+        long startTime = System.currentTimeMillis();
+        AtomicBoolean reached = new AtomicBoolean(false);
+        if (guiStateCommon == null || guiStateCommon.length() == 0) {
+            // No checksum - create one
+            CompletableFuture<Set<Long>> stateSet;
+            if (adaptiveStepDelay) {
+                stateSet = pollStateSetAsync((set, previousSet) -> {
+                    boolean converged = set.equals(previousSet);
+                    reached.compareAndSet(false, converged);
+                    return converged;
+                }, 0, 250, getLearnedStepDelay(properties));
+            } else {
+                stateSet = pollStateSetAsync((set, previousSet) -> true, fullWait, 0, 0);
+            }
+            return stateSet.thenApply(set -> {
+                if (adaptiveStepDelay && reached.get()) {
+                    // Only waits that reached a stable state are samples
+                    recordStepDelay(properties, System.currentTimeMillis() - startTime);
+                }
+                if (set != null && !set.isEmpty()) {
+                    properties.setProperty("gui_state_common", setToString(set));
+                }
+                return false;
+            });
+        }
+
+        // The state is only updated after the full step delay (a page may be half loaded at the learned delay)
+        Set<Long> setStateCommon = stringToSet(guiStateCommon);
+        long deadline = adaptiveStepDelay ? getLearnedStepDelay(properties) : fullWait;
+        return pollStateSetAsync((set, previousSet) -> set.containsAll(setStateCommon), 0, 50, deadline)
+                .thenApply(set -> {
+                    if (set != null && set.containsAll(setStateCommon)) {
+                        // In the next state
+                        if (adaptiveStepDelay) {
+                            recordStepDelay(properties, System.currentTimeMillis() - startTime);
+                        }
+                        return true;
+                    }
+                    if (set != null && System.currentTimeMillis() - startTime >= fullWait) {
+                        // Done waiting - update the state
+                        setStateCommon.retainAll(set);
+                        if (!setStateCommon.isEmpty()) {
+                            properties.setProperty("gui_state_common", setToString(setStateCommon));
+                        }
+                    }
+                    return false;
+                });
+    }
+
+    /**
+     * Create GUI state sets on the driver thread until done returns true (given the current and previous set) or maxWait has passed
+     *
+     * @return A future with the latest state set (or null if no state set could be created)
+     */
+    private CompletableFuture<Set<Long>> pollStateSetAsync(BiPredicate<Set<Long>, Set<Long>> done, long initialDelay, long interval, long maxWait) {
+        CompletableFuture<Set<Long>> result = new CompletableFuture<>();
+        long startTime = System.currentTimeMillis() + initialDelay;
+        pollStateSetAsync(done, initialDelay, interval, startTime, maxWait, null, result);
+        return result;
+    }
+
+    private void pollStateSetAsync(BiPredicate<Set<Long>, Set<Long>> done, long delayMillis, long interval, long startTime, long maxWait, Set<Long> previousSet, CompletableFuture<Set<Long>> result) {
+        try {
+            getDriverExecutor().schedule(() -> {
+                Set<Long> set = createStateSet(false);
+                if (set != null && !set.isEmpty() && done.test(set, previousSet)) {
+                    result.complete(set);
+                } else if (System.currentTimeMillis() - startTime >= maxWait) {
+                    result.complete(set != null ? set : previousSet);
+                } else {
+                    pollStateSetAsync(done, interval, interval, startTime, maxWait, set != null ? set : previousSet, result);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private String object2String(Object o) {
+        if (o == null) {
+            return null;
+        }
+        if (o instanceof String) {
+            String s = (String) o;
+            return s.trim();
+        } else if (o instanceof Integer) {
+            Integer i = (Integer) o;
+            return i.toString();
+        }
+        if (o instanceof Double) {
+            Double d = (Double) o;
+            int i = d.intValue();
+            return "" + i;
+        } else if (o instanceof Long) {
+            Long l = (Long) o;
+            return l.toString();
+        }
+        return null;
+    }
+
+    private int string2Int(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private long string2Long(String text) {
+        try {
+            return Long.parseLong(text);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Delay the thread a number of milliseconds
+     *
+     * @param milliseconds
+     */
+    public void delay(int milliseconds) {
+        try {
+            Thread.sleep(milliseconds);
+        } catch (InterruptedException e) {
+        }
+    }
+
+    private void repairLocator(Locator locator, Locator repairFromWidget) {
+        List<String> keys = repairFromWidget.getMetadataKeys();
+
+        // Check if metadata should be ignored
+        for (String key : keys) {
+            String value1 = locator.getMetadata(key);
+            String value2 = repairFromWidget.getMetadata(key);
+            if (value1 == null || !value1.equals(value2)) {
+                // Is missing or has changed
+                if (locator.isRepairedMetadata(key)) {
+                    // Repaired last time - time to ignore
+                    locator.addIgnoredMetadata(key);
+                }
+            }
+        }
+
+        // Check if metadata should be repaired
+        locator.clearRepairedMetadata();
+        for (String key : keys) {
+            String value1 = locator.getMetadata(key);
+            String value2 = repairFromWidget.getMetadata(key);
+            if (value1 == null) {
                 // Is missing - add
                 locator.putMetadata(key, value2);
             } else if (!value1.equals(value2)) {
@@ -634,6 +1424,9 @@ public class Similo {
                 }
             }
         }
+
+        // Store the repaired and ignored flags in the properties
+        locator.storeFlags();
     }
 
     private boolean isBlank(String value) {
@@ -659,8 +1452,36 @@ public class Similo {
      * @return A list of locators to web elements
      */
     public List<Locator> getLocators(String elementsToExtract) {
-        List<Locator> locators = new ArrayList<Locator>();
+        String json = extractElements(elementsToExtract);
+        if (json == null) {
+            return null;
+        }
+        return parseLocators(json);
+    }
+
+    /**
+     * Get all locators that belong to any of the tags in elementsToExtract for internal use.
+     * The locators are reused by the next extraction (if reuseLocators is set).
+     *
+     * @return A list of locators to web elements
+     */
+    private List<Locator> extractLocators(String elementsToExtract) {
+        if (!reuseLocators) {
+            return getLocators(elementsToExtract);
+        }
+        String json = extractElements(elementsToExtract);
+        if (json == null) {
+            return null;
+        }
+        return parseLocators(json, locatorArena);
+    }
 
+    /**
+     * Extract the visible elements from the browser
+     *
+     * @return The elements as a JSON array or null if the extraction failed
+     */
+    private String extractElements(String elementsToExtract) {
         if (webDriver != null) {
             try {
                 webDriver.manage().timeouts().setScriptTimeout(300, TimeUnit.SECONDS);
@@ -672,105 +1493,132 @@ public class Similo {
                         "    if (elementIsVisible(all[i])) result.push({'tag': all[i].tagName, 'class': all[i].className, 'type': all[i].type, 'name': all[i].name, 'id': all[i].id, 'value': all[i].value, 'href': all[i].href, 'text': all[i].textContent, 'placeholder': all[i].placeholder, 'title': all[i].title, 'alt': all[i].alt, 'x': getXPosition(all[i]), 'y': getYPosition(all[i]), 'width': getMaxWidth(all[i]), 'height': getMaxHeight(all[i]), 'children': all[i].children.length, 'xpath': getXPath(all[i]), 'idxpath': getIdXPath(all[i])}); " +
                         "} " +
                         " return JSON.stringify(result); ");
+                return object.toString();
+            } catch (Exception e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Create locators from extracted elements (does not access the browser)
+     *
+     * @param json The elements as a JSON array
+     * @return A list of locators or null if the JSON could not be parsed
+     */
+    private List<Locator> parseLocators(String json) {
+        return parseLocators(json, null);
+    }
 
+    /**
+     * Create locators from extracted elements and reuse the locators of the previous extraction
+     *
+     * @param arena The locators to reuse or null to create new locators
+     */
+    private List<Locator> parseLocators(String json, LocatorArena arena) {
+        List<Locator> locators = new ArrayList<Locator>(arena != null ? arena.size() : 10);
+        if (arena != null) {
+            arena.startExtraction();
+        }
+        try {
+            JSONParser parser = new JSONParser();
+            JSONArray jsonArray = (JSONArray) parser.parse(json);
 
-                String json = object.toString();
-                JSONParser parser = new JSONParser();
-                JSONArray jsonArray = (JSONArray) parser.parse(json);
+            for (int i = 0; i < jsonArray.size(); i++) {
+                JSONObject jsonObject = (JSONObject) jsonArray.get(i);
 
-                for (int i = 0; i < jsonArray.size(); i++) {
-                    JSONObject jsonObject = (JSONObject) jsonArray.get(i);
+                String tag = object2String(jsonObject.get("tag"));
+                if (tag != null) {
+                    tag = tag.toLowerCase();
+                }
+                String className = object2String(jsonObject.get("class"));
+                String type = object2String(jsonObject.get("type"));
+                String name = object2String(jsonObject.get("name"));
+                String id = object2String(jsonObject.get("id"));
+                String value = object2String(jsonObject.get("value"));
+                String href = object2String(jsonObject.get("href"));
+                String text = object2String(jsonObject.get("text"));
+                String placeholder = object2String(jsonObject.get("placeholder"));
+                String title = object2String(jsonObject.get("title"));
+                String alt = object2String(jsonObject.get("alt"));
+                String xpath = object2String(jsonObject.get("xpath"));
+                String idxpath = object2String(jsonObject.get("idxpath"));
+                String xStr = object2String(jsonObject.get("x"));
+                String yStr = object2String(jsonObject.get("y"));
+                String widthStr = object2String(jsonObject.get("width"));
+                String heightStr = object2String(jsonObject.get("height"));
 
-                    String tag = object2String(jsonObject.get("tag"));
-                    if (tag != null) {
-                        tag = tag.toLowerCase();
-                    }
-                    String className = object2String(jsonObject.get("class"));
-                    String type = object2String(jsonObject.get("type"));
-                    String name = object2String(jsonObject.get("name"));
-                    String id = object2String(jsonObject.get("id"));
-                    String value = object2String(jsonObject.get("value"));
-                    String href = object2String(jsonObject.get("href"));
-                    String text = object2String(jsonObject.get("text"));
-                    String placeholder = object2String(jsonObject.get("placeholder"));
-                    String title = object2String(jsonObject.get("title"));
-                    String alt = object2String(jsonObject.get("alt"));
-                    String xpath = object2String(jsonObject.get("xpath"));
-                    String idxpath = object2String(jsonObject.get("idxpath"));
-                    String xStr = object2String(jsonObject.get("x"));
-                    String yStr = object2String(jsonObject.get("y"));
-                    String widthStr = object2String(jsonObject.get("width"));
-                    String heightStr = object2String(jsonObject.get("height"));
-
-                    int x = string2Int(xStr);
-                    int y = string2Int(yStr);
-                    int width = string2Int(widthStr);
-                    int height = string2Int(heightStr);
-
-                    if (width > 0 && height > 0) {
-                        Locator locator = new Locator();
+                int x = string2Int(xStr);
+                int y = string2Int(yStr);
+                int width = string2Int(widthStr);
+                int height = string2Int(heightStr);
 
+                if (width > 0 && height > 0) {
+                    Locator locator = arena != null ? arena.nextLocator() : new Locator();
+
+                    if (locator.getLocationArea() != null) {
+                        locator.getLocationArea().setBounds(x, y, width, height);
+                    } else {
                         locator.setLocationArea(new Rectangle(x, y, width, height));
-                        locator.setX(x);
-                        locator.setY(y);
-                        locator.setWidth(width);
-                        locator.setHeight(height);
-
-                        addMetadata(locator, "tag", tag);
-                        addMetadata(locator, "class", className);
-                        addMetadata(locator, "type", type);
-                        addMetadata(locator, "name", name);
-                        addMetadata(locator, "id", id);
-                        addMetadata(locator, "value", value);
-                        addMetadata(locator, "href", href);
+                    }
+                    locator.setX(x);
+                    locator.setY(y);
+                    locator.setWidth(width);
+                    locator.setHeight(height);
+
+                    addMetadata(locator, "tag", tag);
+                    addMetadata(locator, "class", className);
+                    addMetadata(locator, "type", type);
+                    addMetadata(locator, "name", name);
+                    addMetadata(locator, "id", id);
+                    addMetadata(locator, "value", value);
+                    addMetadata(locator, "href", href);
 //						if(isValidText(text))
-                        {
-                            addMetadata(locator, "text", stripString(truncate(text)));
-                        }
-                        addMetadata(locator, "placeholder", placeholder);
-                        addMetadata(locator, "title", title);
-                        addMetadata(locator, "alt", alt);
-                        addMetadata(locator, "xpath", xpath);
-                        addMetadata(locator, "idxpath", idxpath);
-                        addMetadata(locator, "x", xStr);
-                        addMetadata(locator, "y", yStr);
-                        addMetadata(locator, "height", heightStr);
-                        addMetadata(locator, "width", widthStr);
-
-                        int area = width * height;
-                        int shape = (width * 100) / height;
-                        addMetadata(locator, "area", "" + area);
-                        addMetadata(locator, "shape", "" + shape);
-
-                        String visibleText = locator.getVisibleText();
-                        if (visibleText != null) {
-                            locator.putMetadata("visible_text", visibleText);
-                        }
-                        String isButton = isButton(tag, type, className) ? "yes" : "no";
-                        ;
-                        locator.putMetadata("is_button", isButton);
-
-                        locators.add(locator);
+                    {
+                        addMetadata(locator, "text", stripString(truncate(text)));
                     }
-                }
+                    addMetadata(locator, "placeholder", placeholder);
+                    addMetadata(locator, "title", title);
+                    addMetadata(locator, "alt", alt);
+                    addMetadata(locator, "xpath", xpath);
+                    addMetadata(locator, "idxpath", idxpath);
+                    addMetadata(locator, "x", xStr);
+                    addMetadata(locator, "y", yStr);
+                    addMetadata(locator, "height", heightStr);
+                    addMetadata(locator, "width", widthStr);
+
+                    int area = width * height;
+                    int shape = (width * 100) / height;
+                    addMetadata(locator, "area", "" + area);
+                    addMetadata(locator, "shape", "" + shape);
+
+                    String visibleText = locator.getVisibleText();
+                    if (visibleText != null) {
+                        locator.putMetadata("visible_text", visibleText);
+                    }
+                    String isButton = isButton(tag, type, className) ? "yes" : "no";
+                    ;
+                    locator.putMetadata("is_button", isButton);
 
-                for (Locator locator : locators) {
-                    addNeighborText(locator, locators);
-                    double maxScore = calcMaxSimilarityScore(locator);
-                    locator.setMaxScore(maxScore);
-                    addOverlappingLocatorParameters(locator, locators);
+                    locators.add(locator);
                 }
+            }
+
+            for (Locator locator : locators) {
+                addNeighborText(locator, locators);
+                double maxScore = calcMaxSimilarityScore(locator);
+                locator.setMaxScore(maxScore);
+                addOverlappingLocatorParameters(locator, locators);
+            }
 
-                // Remove duplicates
+            // Remove duplicates
 //				locators = removeIdenticalLocators(locators);
 
-                return locators;
-            } catch (Exception e) {
-                return null;
-            }
+            return locators;
+        } catch (Exception e) {
+            return null;
         }
-
-        return null;
     }
 
     private String truncate(String text) {
@@ -836,6 +1684,49 @@ public class Similo {
         this.stepDelay = delay;
     }
 
+    /**
+     * @return true if the step delay is learned per locator
+     */
+    public boolean isAdaptiveStepDelay() {
+        return adaptiveStepDelay;
+    }
+
+    /**
+     * Learn the step delay per locator instead of waiting the full step delay the first time.
+     * The recorded delays are stored in the properties file of each locator.
+     *
+     * @param adaptiveStepDelay true to learn the step delay (false by default)
+     */
+    public void setAdaptiveStepDelay(boolean adaptiveStepDelay) {
+        this.adaptiveStepDelay = adaptiveStepDelay;
+    }
+
+    public int getStepDelayPercentile() {
+        return stepDelayPercentile;
+    }
+
+    /**
+     * Set the percentile of the recorded delays to wait for in adaptive mode
+     *
+     * @param stepDelayPercentile Percentile between 1 and 100 (90 by default)
+     */
+    public void setStepDelayPercentile(int stepDelayPercentile) {
+        this.stepDelayPercentile = stepDelayPercentile;
+    }
+
+    public int getStepDelayMargin() {
+        return stepDelayMargin;
+    }
+
+    /**
+     * Set the margin added to the learned delay in adaptive mode
+     *
+     * @param stepDelayMargin Time in milliseconds (500 by default)
+     */
+    public void setStepDelayMargin(int stepDelayMargin) {
+        this.stepDelayMargin = stepDelayMargin;
+    }
+
     /**
      * Load or save cookies from file
      *
@@ -845,51 +1736,210 @@ public class Similo {
     public void manageCookies(String fileName, WebDriver webDriver) {
         File propFile = new File(propertiesFolder, fileName + ".cookies");
         if (!propFile.exists()) {
-            delay(stepDelay * 1000);
+            if (adaptiveStepDelay) {
+                waitForStableStateSet(stepDelay * 1000L);
+            } else {
+                delay(stepDelay * 1000);
+            }
             saveCookies(propFile.getAbsolutePath(), webDriver);
         } else {
             loadCookies(propFile.getAbsolutePath(), webDriver);
         }
     }
 
-    /**
-     * Load cookies from file
-     *
-     * @param filepath  - Path to cookie file
-     * @param webDriver
-     */
-    public void loadCookies(String filepath, WebDriver webDriver) {
+    /**
+     * Load cookies from file
+     *
+     * @param filepath  - Path to cookie file
+     * @param webDriver
+     */
+    public void loadCookies(String filepath, WebDriver webDriver) {
+        try {
+            Object object = loadObject(filepath);
+            if (object != null) {
+                Set<Cookie> cookies = (Set<Cookie>) object;
+                for (Cookie cookie : cookies) {
+                    try {
+                        webDriver.manage().addCookie(cookie);
+                    } catch (Exception e) {
+                    }
+                }
+            }
+            webDriver.navigate().refresh();
+            delay(1000);
+        } catch (Exception e) {
+        }
+    }
+
+    /**
+     * Save cookies to file
+     *
+     * @param filepath  - Path to cookie file
+     * @param webDriver
+     * @return true if saved
+     */
+    public boolean saveCookies(String filepath, WebDriver webDriver) {
+        try {
+            Set<Cookie> cookies = webDriver.manage().getCookies();
+            return saveObject(filepath, cookies);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Save the session (cookies, localStorage and sessionStorage) the first time and restore it the next time.
+     * Use this to skip login or other setup steps.
+     *
+     * @param fileName - Name of session file
+     * @return true if saved or restored
+     */
+    public boolean manageSession(String fileName) {
+        File sessionFile = new File(propertiesFolder, fileName + ".session");
+        if (!sessionFile.exists()) {
+            return saveSession(sessionFile.getAbsolutePath());
+        } else {
+            return loadSession(sessionFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Save cookies, localStorage, sessionStorage, the current URL and the common GUI state to a session file (JSON).
+     * Cookies are read with WebDriver since HttpOnly cookies can't be read by a script.
+     *
+     * @param filepath - Path to session file
+     * @return true if saved
+     */
+    public boolean saveSession(String filepath) {
+        if (webDriver == null) {
+            return false;
+        }
+        return onDriverThread(() -> saveSessionFile(filepath), false);
+    }
+
+    private boolean saveSessionFile(String filepath) {
+        try {
+            Set<Long> stateSet = createInitialStateSet();
+            JavascriptExecutor executor = (JavascriptExecutor) webDriver;
+            String storage = (String) executor.executeScript(SESSION_STORAGE_SCRIPT);
+            JSONParser parser = new JSONParser();
+            JSONObject session = (JSONObject) parser.parse(storage);
+
+            JSONArray cookies = new JSONArray();
+            for (Cookie cookie : webDriver.manage().getCookies()) {
+                JSONObject jsonCookie = new JSONObject();
+                jsonCookie.put("name", cookie.getName());
+                jsonCookie.put("value", cookie.getValue());
+                jsonCookie.put("domain", cookie.getDomain());
+                jsonCookie.put("path", cookie.getPath());
+                if (cookie.getExpiry() != null) {
+                    jsonCookie.put("expiry", cookie.getExpiry().getTime());
+                }
+                jsonCookie.put("secure", cookie.isSecure());
+                jsonCookie.put("httpOnly", cookie.isHttpOnly());
+                jsonCookie.put("sameSite", cookie.getSameSite());
+                cookies.add(jsonCookie);
+            }
+            session.put("cookies", cookies);
+            if (stateSet != null && !stateSet.isEmpty()) {
+                session.put("state", setToString(stateSet));
+            }
+
+            Files.write(new File(filepath).toPath(), session.toJSONString().getBytes(StandardCharsets.UTF_8));
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Restore a session saved by saveSession and navigate to the saved URL.
+     * The browser must be on the same site as when the session was saved.
+     * If the saved GUI state is not reached within the step delay it is reduced to the part that is common
+     * with the current state (same as gui_state_common) and the session file is updated.
+     *
+     * @param filepath - Path to session file
+     * @return true if restored and the saved GUI state was reached within the step delay
+     */
+    public boolean loadSession(String filepath) {
+        if (webDriver == null) {
+            return false;
+        }
+        return onDriverThread(() -> loadSessionFile(filepath), false);
+    }
+
+    private boolean loadSessionFile(String filepath) {
         try {
-            Object object = loadObject(filepath);
-            if (object != null) {
-                Set<Cookie> cookies = (Set<Cookie>) object;
-                for (Cookie cookie : cookies) {
+            String text = new String(Files.readAllBytes(new File(filepath).toPath()), StandardCharsets.UTF_8);
+            JSONParser parser = new JSONParser();
+            JSONObject session = (JSONObject) parser.parse(text);
+
+            JSONArray cookies = (JSONArray) session.get("cookies");
+            if (cookies != null) {
+                for (Object object : cookies) {
+                    JSONObject jsonCookie = (JSONObject) object;
+                    Object expiry = jsonCookie.get("expiry");
+                    Cookie cookie = new Cookie((String) jsonCookie.get("name"), (String) jsonCookie.get("value"),
+                            (String) jsonCookie.get("domain"), (String) jsonCookie.get("path"),
+                            expiry != null ? new Date(((Number) expiry).longValue()) : null,
+                            Boolean.TRUE.equals(jsonCookie.get("secure")), Boolean.TRUE.equals(jsonCookie.get("httpOnly")),
+                            (String) jsonCookie.get("sameSite"));
                     try {
                         webDriver.manage().addCookie(cookie);
                     } catch (Exception e) {
                     }
                 }
             }
-            webDriver.navigate().refresh();
-            delay(1000);
-        } catch (Throwable e) {
+
+            JavascriptExecutor executor = (JavascriptExecutor) webDriver;
+            executor.executeScript("var restore = function(storage, items) {for (var key in items) {storage.setItem(key, items[key]);}}; " +
+                            "try {restore(localStorage, JSON.parse(arguments[0]));} catch (e) {} " +
+                            "try {restore(sessionStorage, JSON.parse(arguments[1]));} catch (e) {}",
+                    toJSONString(session.get("localStorage")), toJSONString(session.get("sessionStorage")));
+
+            String url = (String) session.get("url");
+            if (url != null) {
+                webDriver.navigate().to(url);
+            } else {
+                webDriver.navigate().refresh();
+            }
+
+            String state = (String) session.get("state");
+            if (state == null) {
+                return true;
+            }
+            Set<Long> stateSet = stringToSet(state);
+            Set<Long> set = null;
+            long startTime = System.currentTimeMillis();
+            while (System.currentTimeMillis() - startTime < stepDelay * 1000L) {
+                Set<Long> nextSet = createStateSet();
+                if (nextSet != null) {
+                    if (nextSet.containsAll(stateSet)) {
+                        return true;
+                    }
+                    set = nextSet;
+                }
+                delay(250);
+            }
+            if (set != null) {
+                // Done waiting - update the state
+                stateSet.retainAll(set);
+                if (!stateSet.isEmpty()) {
+                    session.put("state", setToString(stateSet));
+                    Files.write(new File(filepath).toPath(), session.toJSONString().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return false;
+        } catch (Exception e) {
+            return false;
         }
     }
 
-    /**
-     * Save cookies to file
-     *
-     * @param filepath  - Path to cookie file
-     * @param webDriver
-     * @return true if saved
-     */
-    public boolean saveCookies(String filepath, WebDriver webDriver) {
-        try {
-            Set<Cookie> cookies = webDriver.manage().getCookies();
-            return saveObject(filepath, cookies);
-        } catch (Throwable e) {
-            return false;
+    private String toJSONString(Object jsonObject) {
+        if (jsonObject instanceof JSONObject) {
+            return ((JSONObject) jsonObject).toJSONString();
         }
+        return "{}";
     }
 
     private Object loadObject(String filepath) {
@@ -1109,38 +2159,102 @@ public class Similo {
     }
 
     private Properties loadProperties(File file) {
-        Properties properties = new Properties();
-        try {
-            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF8"));
-            String str;
-            while ((str = in.readLine()) != null) {
-                String[] split = str.split("=", 2);
-                if (split.length == 2) {
-                    properties.put(split[0], split[1]);
-                }
-            }
-            in.close();
-            return properties;
-        } catch (Exception e) {
-            // File not found
-            return null;
-        }
+        LocatorStore store = getStore();
+        return store != null ? store.load(getLocatorName(file)) : LocatorRepository.readProperties(file);
     }
 
     private boolean saveProperties(File file, Properties properties) {
-        try {
-            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF8"));
-            for (Object keyObject : properties.keySet()) {
-                String key = (String) keyObject;
-                String value = (String) properties.getProperty(key);
-                out.write(key + "=" + value);
-                out.newLine();
-            }
-            out.close();
-        } catch (Exception e) {
-            return false;
+        LocatorStore store = getStore();
+        return store != null ? store.save(getLocatorName(file), properties) : LocatorRepository.writeProperties(file, properties);
+    }
+
+    private boolean propertiesExist(File file) {
+        LocatorStore store = getStore();
+        return store != null ? store.exists(getLocatorName(file)) : file.exists();
+    }
+
+    private String getLocatorName(File file) {
+        String name = file.getName();
+        if (name.endsWith(".properties")) {
+            return name.substring(0, name.length() - ".properties".length());
         }
-        return true;
+        return name;
+    }
+
+    public LocatorStore getLocatorStore() {
+        return locatorStore;
+    }
+
+    /**
+     * Load and save the locator properties in a store (e.g. IndexedLocatorStore) instead of the properties folder.
+     * The locators are found by the same file names as in the folder.
+     *
+     * @param locatorStore The store or null to use the properties folder (default)
+     */
+    public void setLocatorStore(LocatorStore locatorStore) {
+        this.locatorStore = locatorStore;
+    }
+
+    /**
+     * Get the store of the locators: the locator store if set, else the in-memory repository of the properties folder
+     * (that writes the locators in the crash safe mode of this Similo) if used
+     *
+     * @return The store or null to read and write the properties files directly
+     */
+    private LocatorStore getStore() {
+        if (locatorStore != null) {
+            return locatorStore;
+        }
+        if (useLocatorRepository || crashSafePersistence) {
+            return LocatorRepository.getRepository(propertiesFolder).getStore(crashSafePersistence);
+        }
+        return null;
+    }
+
+    public boolean isCrashSafePersistence() {
+        return crashSafePersistence;
+    }
+
+    /**
+     * Write the repaired locators atomically (temp file, sync and rename) in batches.
+     * Repairs of the same locator are coalesced in memory and only written if the content has changed.
+     * Uses the in-memory repository (see setUseLocatorRepository) in crash safe mode.
+     *
+     * @param crashSafePersistence true to write atomically (false by default)
+     */
+    public void setCrashSafePersistence(boolean crashSafePersistence) {
+        this.crashSafePersistence = crashSafePersistence;
+    }
+
+    public boolean isReuseLocators() {
+        return reuseLocators;
+    }
+
+    /**
+     * Reuse the locators of the previous extraction while waiting for and locating elements (true by default).
+     * Locators returned by getLocators are never reused.
+     *
+     * @param reuseLocators false to create new locators for each extraction
+     */
+    public void setReuseLocators(boolean reuseLocators) {
+        this.reuseLocators = reuseLocators;
+        if (!reuseLocators) {
+            locatorArena.clear();
+        }
+    }
+
+    public boolean isUseLocatorRepository() {
+        return useLocatorRepository;
+    }
+
+    /**
+     * Keep the locator properties in memory and write the changes in batches in the background (see LocatorRepository).
+     * Changes are written at close() or when the JVM exits.
+     *
+     * @param useLocatorRepository true to use the in-memory repository (false by default)
+     */
+    public void setUseLocatorRepository(boolean useLocatorRepository) {
+        this.useLocatorRepository = useLocatorRepository;
     }
 
     /**
@@ -1214,6 +2328,9 @@ public class Similo {
     private boolean stepDelay(Properties properties) {
 //		String guiStateChecksum=properties.getProperty("gui_state_checksum");
         String guiStateCommon = properties.getProperty("gui_state_common");
+        if (adaptiveStepDelay) {
+            return adaptiveStepDelay(properties, guiStateCommon);
+        }
         if (guiStateCommon == null) {
             // No checksum - create one
             delay(stepDelay * 1000);
@@ -1285,8 +2402,172 @@ public class Similo {
         return false;
     }
 
+    /**
+     * Wait for the GUI state using the delay learned for this locator.
+     * The first run waits until two consecutive state sets are equal instead of sleeping the full step delay
+     * (at most the learned delay). The time it took to reach the state is recorded in the properties
+     * (gui_state_delay_samples) and the percentile of the samples (gui_state_delay) is the learned delay.
+     * When the state is known, the learned delay is the deadline of the wait. Waits that time out are not recorded.
+     * The common state is only reduced after the full step delay (no learned delay yet),
+     * same as without adaptive step delay, so a slow page load does not remove parts of the state.
+     *
+     * @param properties     Contains the locators (will be updated with the learned delay)
+     * @param guiStateCommon The common GUI state from the last run or null if missing
+     * @return true if in the expected GUI state
+     */
+    private boolean adaptiveStepDelay(Properties properties, String guiStateCommon) {
+        long startTime = System.currentTimeMillis();
+        if (guiStateCommon == null || guiStateCommon.length() == 0) {
+            // No checksum - wait for a stable state and create one
+            Set<Long> set = new HashSet<>();
+            if (waitForStableStateSet(getLearnedStepDelay(properties), set)) {
+                recordStepDelay(properties, System.currentTimeMillis() - startTime);
+            }
+            if (!set.isEmpty()) {
+                properties.setProperty("gui_state_common", setToString(set));
+            }
+            return false;
+        }
+
+        long fullWait = stepDelay * 1000L;
+        long deadline = getLearnedStepDelay(properties);
+        Set<Long> setStateCommon = stringToSet(guiStateCommon);
+        Set<Long> set = null;
+        while (true) {
+            Set<Long> nextSet = createStateSet();
+            long deltaTime = System.currentTimeMillis() - startTime;
+            if (nextSet != null) {
+                if (nextSet.containsAll(setStateCommon)) {
+                    // In the next state
+                    recordStepDelay(properties, deltaTime);
+                    return true;
+                }
+                set = nextSet;
+            }
+            if (deltaTime >= deadline) {
+                // Done waiting - update the state (if waited the full step delay)
+                if (set != null && deltaTime >= fullWait) {
+                    setStateCommon.retainAll(set);
+                    if (!setStateCommon.isEmpty()) {
+                        properties.setProperty("gui_state_common", setToString(setStateCommon));
+                    }
+                }
+                return false;
+            }
+            delay(50);
+        }
+    }
+
+    /**
+     * Wait until two consecutive GUI state sets are equal (converged) or the max time has passed
+     *
+     * @param maxWait Max time to wait in milliseconds
+     * @return The latest state set (empty if no state could be created)
+     */
+    private Set<Long> waitForStableStateSet(long maxWait) {
+        Set<Long> stateSet = new HashSet<>();
+        waitForStableStateSet(maxWait, stateSet);
+        return stateSet;
+    }
+
+    /**
+     * Wait until two consecutive GUI state sets are equal (converged) or the max time has passed
+     *
+     * @param maxWait  Max time to wait in milliseconds
+     * @param stateSet Set to the latest state set (empty if no state could be created)
+     * @return true if converged
+     */
+    private boolean waitForStableStateSet(long maxWait, Set<Long> stateSet) {
+        long startTime = System.currentTimeMillis();
+        Set<Long> previousSet = null;
+        while (true) {
+            Set<Long> set = createStateSet();
+            if (set != null && !set.isEmpty() && set.equals(previousSet)) {
+                // Converged
+                stateSet.addAll(set);
+                return true;
+            }
+            if (set != null) {
+                previousSet = set;
+            }
+            if (System.currentTimeMillis() - startTime >= maxWait) {
+                if (previousSet != null) {
+                    stateSet.addAll(previousSet);
+                }
+                return false;
+            }
+            delay(250);
+        }
+    }
+
+    /**
+     * Get the max time to wait for the GUI state of a locator
+     *
+     * @param properties Contains the locators
+     * @return The percentile of the recorded delays plus the margin, at most stepDelay, in milliseconds
+     */
+    private long getLearnedStepDelay(Properties properties) {
+        long maxDelay = stepDelay * 1000L;
+        List<Long> samples = getStepDelaySamples(properties);
+        if (samples.isEmpty()) {
+            return maxDelay;
+        }
+        Collections.sort(samples);
+        int index = (int) Math.ceil(samples.size() * stepDelayPercentile / 100.0) - 1;
+        index = Math.max(0, Math.min(samples.size() - 1, index));
+        return Math.min(samples.get(index) + stepDelayMargin, maxDelay);
+    }
+
+    /**
+     * Add a delay to the samples of a locator.
+     * The samples are only stored if the learned delay changes, so that the properties file is not rewritten on every run.
+     */
+    private void recordStepDelay(Properties properties, long milliseconds) {
+        List<Long> samples = getStepDelaySamples(properties);
+        samples.add(milliseconds);
+        while (samples.size() > MAX_STEP_DELAY_SAMPLES) {
+            // Keep the most recent samples
+            samples.remove(0);
+        }
+        StringBuffer buf = new StringBuffer();
+        for (Long sample : samples) {
+            if (buf.length() > 0) {
+                buf.append(",");
+            }
+            buf.append(sample);
+        }
+        Properties updated = new Properties();
+        updated.setProperty("gui_state_delay_samples", buf.toString());
+        String learnedStepDelay = "" + getLearnedStepDelay(updated);
+        if (learnedStepDelay.equals(properties.getProperty("gui_state_delay"))) {
+            return;
+        }
+        properties.setProperty("gui_state_delay_samples", buf.toString());
+        properties.setProperty("gui_state_delay", learnedStepDelay);
+    }
+
+    private List<Long> getStepDelaySamples(Properties properties) {
+        List<Long> samples = new ArrayList<>();
+        String samplesText = properties.getProperty("gui_state_delay_samples");
+        if (samplesText == null || samplesText.trim().length() == 0) {
+            return samples;
+        }
+        for (String item : samplesText.split(Pattern.quote(","))) {
+            try {
+                long sample = Long.parseLong(item.trim());
+                if (sample >= 0) {
+                    // 0 is a wait that was not needed
+                    samples.add(sample);
+                }
+            } catch (NumberFormatException e) {
+                // Not a sample
+            }
+        }
+        return samples;
+    }
+
     private long createGuiStateChecksum() {
-        List<Locator> availableLocators = getLocators(elementsToExtract);
+        List<Locator> availableLocators = extractLocators(elementsToExtract);
 
         List<String> tagList = Arrays.asList(checksumTags);
         long checksum = 0;
@@ -1324,7 +2605,14 @@ public class Similo {
         return set;
     }
 
+    /**
+     * Create the common GUI state of the current page (the intersection of several state sets or a stable state set in adaptive mode)
+     */
     private Set<Long> createInitialStateSet() {
+        if (adaptiveStepDelay) {
+            return waitForStableStateSet(stepDelay * 1000L);
+        }
+
         Set<Long> set = null;
 
         delay(5000);
@@ -1334,7 +2622,9 @@ public class Similo {
             } else {
                 // Create an intersection of the current and next set
                 Set<Long> nextSet = createStateSet();
-                set.retainAll(nextSet);
+                if (nextSet != null) {
+                    set.retainAll(nextSet);
+                }
             }
             delay(2000);
         }
@@ -1343,9 +2633,24 @@ public class Similo {
     }
 
     private Set<Long> createStateSet() {
+        return createStateSet(reuseLocators);
+    }
+
+    /**
+     * @param reuseLocators true to extract into the locators of the previous extraction (only on the calling thread)
+     */
+    private Set<Long> createStateSet(boolean reuseLocators) {
+        List<Locator> availableLocators = reuseLocators ? extractLocators(elementsToExtract) : getLocators(elementsToExtract);
+        Set<Long> set = createStateSet(availableLocators);
+        if (set != null) {
+            publishSnapshot(availableLocators, set, reuseLocators);
+        }
+        return set;
+    }
+
+    private Set<Long> createStateSet(List<Locator> availableLocators) {
         try {
             Set<Long> set = new HashSet<>();
-            List<Locator> availableLocators = getLocators(elementsToExtract);
             for (Locator locator : availableLocators) {
                 long hashValue = createGuiStateChecksum(locator, checksumTags, ckecksumPropertiesAll);
                 if (hashValue > 0) {
@@ -1414,14 +2719,7 @@ public class Similo {
     }
 
     private void writeLine(String filename, String text) {
-        String logMessage = text + "\r\n";
-        File file = new File(filename);
-        try {
-            FileOutputStream o = new FileOutputStream(file, true);
-            o.write(logMessage.getBytes());
-            o.close();
-        } catch (Exception e) {
-        }
+        AsyncLog.writeLine(filename, text);
     }
 
     /**
@@ -1456,36 +2754,60 @@ public class Similo {
         this.maxChecksumDiff = maxChecksumDiff;
     }
 
+    /**
+     * Install a page quiescence detector in the current page.
+     * DOM changes are tracked with a MutationObserver and pending requests by intercepting XMLHttpRequest and fetch.
+     * Also sets the script timeout of the driver (long enough for waitForPageIdle).
+     *
+     * @param webDriver none
+     */
     public void prepareAjaxWait(WebDriver webDriver) {
         if (webDriver != null) {
             try {
+                // Same timeout as the extraction unless waitForPageIdle waits longer
+                webDriver.manage().timeouts().setScriptTimeout(Math.max(300, stepDelay + 5), TimeUnit.SECONDS);
                 JavascriptExecutor executor = (JavascriptExecutor) webDriver;
-                executor.executeScript("window.new_page = 'true'; function setNewPageValue(e) {window.new_page = 'true';}; " +
-                        "window.addEventListener(\"beforeunload\", setNewPageValue, false); " +
-                        "if (window.XMLHttpRequest) {if (!window.origXMLHttpRequest || !window.ajax_obj) { " +
-                        "window.ajax_obj = []; window.origXMLHttpRequest = window.XMLHttpRequest; " +
-                        "window.XMLHttpRequest = function() { var xhr = new window.origXMLHttpRequest(); " +
-                        "window.ajax_obj.push(xhr); return xhr;}}} function setDOMModifiedTime() { " +
-                        "window.domModifiedTime = Date.now();}var _win = window.document.body; " +
-                        "_win.addEventListener(\"DOMNodeInserted\", setDOMModifiedTime, false); " +
-                        "_win.addEventListener(\"DOMNodeInsertedIntoDocument\", setDOMModifiedTime, false); " +
-                        "_win.addEventListener(\"DOMNodeRemoved\", setDOMModifiedTime, false); " +
-                        "_win.addEventListener(\"DOMNodeRemovedFromDocument\", setDOMModifiedTime, false); " +
-                        "_win.addEventListener(\"DOMSubtreeModified\", setDOMModifiedTime, false); ");
+                executor.executeScript("window.new_page = 'true'; " + QUIESCENCE_SCRIPT);
             } catch (Exception e) {
                 return;
             }
         }
     }
 
+    /**
+     * Wait until the page has been idle (document complete, no DOM changes and no pending XHR or fetch requests)
+     * for a number of milliseconds. Installs the quiescence detector if missing and waits in a single round-trip
+     * (the script timeout is set by prepareAjaxWait).
+     *
+     * @param webDriver  none
+     * @param idleMillis The time, in milliseconds, the page must have been idle
+     * @return true if the page is idle or false if stepDelay passed before that
+     */
+    public boolean waitForPageIdle(WebDriver webDriver, int idleMillis) {
+        if (webDriver != null) {
+            try {
+                long maxWait = stepDelay * 1000L;
+                JavascriptExecutor executor = (JavascriptExecutor) webDriver;
+                Object object = executor.executeAsyncScript(QUIESCENCE_SCRIPT +
+                        "var idle = arguments[0]; var maxWait = arguments[1]; var callback = arguments[arguments.length - 1]; " +
+                        "var start = Date.now(); " +
+                        "function checkIdle() { var now = Date.now(); " +
+                        "if (document.readyState == 'complete' && window.similo_pending <= 0 && now - window.domModifiedTime >= idle) {callback('true'); return;} " +
+                        "if (now - start >= maxWait) {callback('false'); return;} " +
+                        "setTimeout(checkIdle, Math.min(idle, 100));} " +
+                        "checkIdle(); ", idleMillis, maxWait);
+                return object != null && object.toString().equals("true");
+            } catch (Exception e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
     public boolean waitPageDomAjax(WebDriver webDriver) {
         long startTime = System.currentTimeMillis();
         while (true) {
             boolean newPageValue = getNewPageValue(webDriver);
-            boolean documentReady = getDocumentReady(webDriver);
-            boolean ajaxReady = getAjaxReady(webDriver);
-            String domModifiedTime = getDomModifiedTime(webDriver);
-//			if(newPageValue && documentReady && ajaxReady)
             if (newPageValue) {
                 return true;
             }
@@ -1585,6 +2907,131 @@ public class Similo {
         Similo.checksumTags = checksumTags;
     }
 
+    /**
+     * Get all locators that belong to any of the tags in elementsToExtract as a batch for scoreBatch
+     *
+     * @return A batch of candidates or null if the extraction failed
+     */
+    public CandidateBatch getCandidateBatch(String elementsToExtract) {
+        List<Locator> locators = getLocators(elementsToExtract);
+        if (locators == null) {
+            return null;
+        }
+        return new CandidateBatch(locators);
+    }
+
+    /**
+     * Score all candidates in a batch, one attribute at a time.
+     * Gives the same scores as calcSimilarityScore in this class.
+     *
+     * @param targetWidget The locator to find
+     * @param batch        The candidates
+     * @return The score of each candidate (in batch order)
+     */
+    public double[] scoreBatch(Locator targetWidget, CandidateBatch batch) {
+        int size = batch.size();
+        double[] scores = new double[size];
+        int[] costs = new int[64];
+        for (int index = 0; index < LOCATORS.length; index++) {
+            String targetValue = targetWidget.getMetadata(LOCATOR_SLOTS[index]);
+            if (targetValue == null) {
+                continue;
+            }
+            double weight = WEIGHTS[index];
+            boolean isVisibleText = "visible_text".equals(LOCATORS[index]);
+            boolean[] present = batch.present[index];
+            int similarityFunction = SIMILARITY_FUNCTION[index];
+
+            if (similarityFunction == 0 || similarityFunction == 1) {
+                String[] targetValues = getParameterValues(targetValue);
+                int[] targetIds = new int[targetValues.length];
+                char[][] targetChars = new char[targetValues.length][];
+                for (int i = 0; i < targetValues.length; i++) {
+                    targetIds[i] = batch.idOf(targetValues[i]);
+                    targetChars[i] = targetValues[i].toLowerCase().toCharArray();
+                }
+                int[] altStart = batch.altStart[index];
+                int[] altIds = batch.altIds[index];
+                for (int row = 0; row < size; row++) {
+                    if (!present[row]) {
+                        continue;
+                    }
+                    double similarity = 0;
+                    for (int i = 0; i < targetValues.length; i++) {
+                        for (int alt = altStart[row]; alt < altStart[row + 1]; alt++) {
+                            double valueSimilarity;
+                            if (similarityFunction == 0) {
+                                valueSimilarity = targetIds[i] >= 0 && targetIds[i] == altIds[alt] ? 1 : 0;
+                            } else {
+                                int candidateLength = batch.altLength[index][alt];
+                                int targetLength = targetValues[i].length();
+                                if (targetLength == 0 || candidateLength == 0) {
+                                    valueSimilarity = 0;
+                                } else if (targetIds[i] >= 0 && targetIds[i] == altIds[alt]) {
+                                    valueSimilarity = 1;
+                                } else {
+                                    int start = batch.charStart[index][alt];
+                                    int length = batch.charStart[index][alt + 1] - start;
+                                    if (costs.length <= Math.max(length, targetChars[i].length)) {
+                                        costs = new int[Math.max(length, targetChars[i].length) * 2];
+                                    }
+                                    int distance = computeLevenshteinDistance(targetChars[i], 0, targetChars[i].length, batch.altChars[index], start, length, costs);
+                                    int longest = Math.max(targetLength, candidateLength);
+                                    valueSimilarity = ((double) ((longest - distance) * 100 / longest)) / 100;
+                                }
+                            }
+                            if (valueSimilarity > similarity) {
+                                similarity = valueSimilarity;
+                            }
+                        }
+                    }
+                    addScore(scores, row, similarity, weight, isVisibleText);
+                }
+            } else if (similarityFunction == 2) {
+                int targetNumber = string2Int(targetValue);
+                int[] numbers = batch.intValues[index];
+                for (int row = 0; row < size; row++) {
+                    if (present[row]) {
+                        double similarity = ((double) integerSimilarity(targetNumber, numbers[row], 1000)) / 1000;
+                        addScore(scores, row, similarity, weight, isVisibleText);
+                    }
+                }
+            } else if (similarityFunction == 3) {
+                String[] splittedTargetLocation = targetValue.split(Pattern.quote(","));
+                if (splittedTargetLocation.length != 2) {
+                    continue;
+                }
+                int x = string2Int(splittedTargetLocation[0]);
+                int y = string2Int(splittedTargetLocation[1]);
+                for (int row = 0; row < size; row++) {
+                    if (present[row] && batch.locationValid[row]) {
+                        int dx = x - batch.locationX[row];
+                        int dy = y - batch.locationY[row];
+                        int pixelDistance = (int) Math.sqrt(dx * dx + dy * dy);
+                        double similarity = ((double) Math.max(200 - pixelDistance, 0)) / 200;
+                        addScore(scores, row, similarity, weight, isVisibleText);
+                    }
+                }
+            } else if (similarityFunction == 4) {
+                String[] texts = batch.texts[index];
+                for (int row = 0; row < size; row++) {
+                    if (present[row]) {
+                        double similarity = ((double) neighborTextSimilarity(targetValue, texts[row], 100)) / 100;
+                        addScore(scores, row, similarity, weight, isVisibleText);
+                    }
+                }
+            }
+        }
+        return scores;
+    }
+
+    private void addScore(double[] scores, int row, double similarity, double weight, boolean isVisibleText) {
+        if (isVisibleText && similarity == 1) {
+            weight *= 2;
+        }
+        scores[row] += similarity * weight;
+    }
+
     public List<Locator> similo(Locator targetWidget, List<Locator> candidateWidgets) {
         similoCalculation(targetWidget, candidateWidgets);
         Collections.sort(candidateWidgets);
@@ -1625,7 +3072,7 @@ public class Similo {
         int index = 0;
         for (String locator : LOCATORS) {
             double weight = WEIGHTS[index];
-            String candidateValue = candidateWidget.getMetadata(locator);
+            String candidateValue = candidateWidget.getMetadata(LOCATOR_SLOTS[index]);
             if (candidateValue != null) {
                 similarityScore += weight;
             }
@@ -1644,8 +3091,8 @@ public class Similo {
                 double weight = WEIGHTS[index];
                 double similarity = 0;
 
-                String targetValue = targetWidget.getMetadata(locator);
-                String candidateValue = candidateWidget.getMetadata(locator);
+                String targetValue = targetWidget.getMetadata(LOCATOR_SLOTS[index]);
+                String candidateValue = candidateWidget.getMetadata(LOCATOR_SLOTS[index]);
 
                 if (targetValue != null && candidateValue != null) {
                     int similarityFunction = SIMILARITY_FUNCTION[index];
@@ -1665,8 +3112,8 @@ public class Similo {
                     } else if (similarityFunction == 3) {
                         // Use 2D distance
 
-                        String targetLocation = targetWidget.getMetadata("location");
-                        String candidateLocation = candidateWidget.getMetadata("location");
+                        String targetLocation = targetWidget.getMetadata(LOCATION_SLOT);
+                        String candidateLocation = candidateWidget.getMetadata(LOCATION_SLOT);
 
                         String[] splittedTargetLocation = targetLocation.split(Pattern.quote(","));
                         String[] splittedCandidateLocation = candidateLocation.split(Pattern.quote(","));
@@ -1784,6 +3231,33 @@ public class Similo {
         return costs[s2.length()];
     }
 
+    /**
+     * Same as computeLevenshteinDistance for lower case chars
+     */
+    private static int computeLevenshteinDistance(char[] s1, int offset1, int length1, char[] s2, int offset2, int length2, int[] costs) {
+        for (int i = 0; i <= length1; i++) {
+            int lastValue = i;
+            for (int j = 0; j <= length2; j++) {
+                if (i == 0) {
+                    costs[j] = j;
+                } else {
+                    if (j > 0) {
+                        int newValue = costs[j - 1];
+                        if (s1[offset1 + i - 1] != s2[offset2 + j - 1]) {
+                            newValue = Math.min(Math.min(newValue, lastValue), costs[j]) + 1;
+                        }
+                        costs[j - 1] = lastValue;
+                        lastValue = newValue;
+                    }
+                }
+            }
+            if (i > 0) {
+                costs[length2] = lastValue;
+            }
+        }
+        return costs[length2];
+    }
+
     private String stripString(String s) {
         StringBuffer stripped = new StringBuffer();
         for (int i = 0; i < s.length(); i++) {
@@ -1,6 +1,10 @@
 package org.example;
 
+import java.io.File;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Properties;
 import java.util.regex.Pattern;
@@ -8,12 +12,28 @@ import java.util.regex.Pattern;
 public class SimiloLLM
 {
 	public List<Properties> readCSV(String csvFilename)
+	{
+		return readCSV(csvFilename, (Collection<String>)null);
+	}
+
+	/**
+	 * Read some columns of a CSV file (the values of other columns are skipped)
+	 * @param csvFilename The CSV file
+	 * @param columns The columns to read
+	 * @return The rows (with the columns and widget_id) or null if the file can't be read
+	 */
+	public List<Properties> readCSV(String csvFilename, String... columns)
+	{
+		return readCSV(csvFilename, Arrays.asList(columns));
+	}
+
+	private List<Properties> readCSV(String csvFilename, Collection<String> columns)
 	{
 		List<Properties> rows=new ArrayList<Properties>();
 		CSVReader csvReader;
 		try
 		{
-			csvReader = new CSVReader(csvFilename);
+			csvReader = new CSVReader(csvFilename, columns);
 			int id=0;
 			while (csvReader.hasNext())
 			{
@@ -30,6 +50,49 @@ public class SimiloLLM
 		}
 	}
 	
+	/**
+	 * Read a large CSV file (a resource) in parallel chunks, same result as readCSV
+	 * @param csvFilename The CSV file
+	 * @return The rows or null if the file can't be read
+	 */
+	public List<Properties> readCSVParallel(String csvFilename)
+	{
+		try
+		{
+			URL resource=CSVReader.class.getClassLoader().getResource(csvFilename);
+			List<Properties> rows=ParallelCsvReader.readProperties(new File(resource.getFile()));
+			int id=0;
+			for(Properties parameters:rows)
+			{
+				parameters.put("widget_id", ""+id);
+				id++;
+			}
+			return rows;
+		}
+		catch (Exception e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Read the rows of a CSV file (a resource) one by one as locators, same as readCSV and toLocator
+	 * @param csvFilename The CSV file
+	 * @param extraKeys Columns to add to the locators (for example app)
+	 * @return The reader or null if the file can't be read
+	 */
+	public LocatorReader readLocators(String csvFilename, String... extraKeys)
+	{
+		try
+		{
+			return new LocatorReader(csvFilename, extraKeys);
+		}
+		catch (Exception e)
+		{
+			return null;
+		}
+	}
+
 	private boolean containsParameterValue(String text, String value)
 	{
 		String[] splitted = text.split(Pattern.quote(" || "));
@@ -71,6 +134,76 @@ public class SimiloLLM
 		return rows;
 	}
 	
+	/**
+	 * Read a CSV file (a resource) from its binary snapshot, the snapshot is created the first time and when the CSV file changes
+	 * @param csvFilename The CSV file
+	 * @return The rows (same as readCSV) or null if the file can't be read
+	 */
+	public List<Properties> readCSVCached(String csvFilename)
+	{
+		DatasetSnapshot snapshot=readSnapshot(csvFilename);
+		if(snapshot==null)
+		{
+			return readCSV(csvFilename);
+		}
+		return snapshot.getRows();
+	}
+
+	/**
+	 * Open the binary snapshot of a CSV file (a resource)
+	 * @param csvFilename The CSV file
+	 * @return The snapshot or null if the file can't be read
+	 */
+	public DatasetSnapshot readSnapshot(String csvFilename)
+	{
+		URL resource=CSVReader.class.getClassLoader().getResource(csvFilename);
+		if(resource==null)
+		{
+			return null;
+		}
+		return DatasetSnapshot.open(new File(resource.getFile()));
+	}
+
+	/**
+	 * Read a CSV file into an indexed dataset
+	 * @param csvFilename The CSV file
+	 * @return The dataset or null if the file can't be read
+	 */
+	public ElementDataset readDataset(String csvFilename)
+	{
+		List<Properties> rows=readCSV(csvFilename);
+		if(rows==null)
+		{
+			return null;
+		}
+		return new ElementDataset(rows);
+	}
+
+	/**
+	 * Read a CSV file into an indexed dataset using the binary snapshot (see readCSVCached)
+	 * @param csvFilename The CSV file
+	 * @return The dataset or null if the file can't be read
+	 */
+	public ElementDataset readDatasetCached(String csvFilename)
+	{
+		List<Properties> rows=readCSVCached(csvFilename);
+		if(rows==null)
+		{
+			return null;
+		}
+		return new ElementDataset(rows);
+	}
+
+	public Properties getByXpath(String app, String xpath, ElementDataset data)
+	{
+		return data.getByXpath(app, xpath);
+	}
+
+	public List<Properties> getByApp(String app, ElementDataset data)
+	{
+		return data.getByApp(app);
+	}
+
 	public boolean oracleExist(String app, String fromxpath, String toxpath, List<Properties> data)
 	{
 		for(Properties p:data)
@@ -86,7 +219,7 @@ public class SimiloLLM
 		return false;
 	}
 
-	private String pathToIndexPath(String path)
+	static String pathToIndexPath(String path)
 	{
 		StringBuffer buf = new StringBuffer();
 		char previousChar = ']';
@@ -107,6 +240,16 @@ public class SimiloLLM
 		return buf.toString();
 	}
 
+	public boolean oracleExist(String app, String fromxpath, String toxpath, OracleIndex data)
+	{
+		return data.oracleExist(app, fromxpath, toxpath);
+	}
+
+	public List<String> getOracleXpaths(String app, String fromxpath, OracleIndex data)
+	{
+		return data.getOracleXpaths(app, fromxpath);
+	}
+
 	public List<String> getOracleXpaths(String app, String fromxpath, List<Properties> data)
 	{
 		List<String> rows=new ArrayList<String>();
@@ -179,46 +322,106 @@ public class SimiloLLM
 		return locator;
 	}
 
-	private String toJsonParameter(String key, Properties data, boolean addComma)
+	private static final String ALTERNATIVE_SEPARATOR=" || ";
+	private static final char[] HEX_DIGITS="0123456789abcdef".toCharArray();
+
+	private boolean appendJsonParameter(StringBuilder json, String key, Properties data, boolean addComma)
 	{
-		return toJsonParameter(key, key, data, addComma, false);
+		return appendJsonParameter(json, key, key, data, addComma, false);
 	}
 
-	private String getShortestParameterValue(String text)
+	/**
+	 * Append the shortest alternative (separated by " || ") without [1].
+	 * Empty alternatives (e.g. after a trailing separator) are skipped.
+	 */
+	private void appendShortestParameterValue(StringBuilder json, String text)
 	{
-		String shortest=null;
-		int len=100000;
-		String[] splitted = text.split(Pattern.quote(" || "));
-		for(String split:splitted)
+		int shortestStart=0;
+		int shortestEnd=0;
+		boolean found=false;
+		int start=0;
+		while(start<=text.length())
 		{
-			if(split.length()<len)
+			int end=text.indexOf(ALTERNATIVE_SEPARATOR, start);
+			if(end<0)
+			{
+				end=text.length();
+			}
+			if(end>start && (!found || end-start<shortestEnd-shortestStart))
 			{
-				shortest=split;
-				len=0;
+				shortestStart=start;
+				shortestEnd=end;
+				found=true;
 			}
+			start=end+ALTERNATIVE_SEPARATOR.length();
 		}
-		String replaced=shortest.replaceAll(Pattern.quote("[1]"), "");
-		return replaced;
+		int from=shortestStart;
+		int index;
+		while((index=text.indexOf("[1]", from))>=0 && index+3<=shortestEnd)
+		{
+			appendEscaped(json, text, from, index);
+			from=index+3;
+		}
+		appendEscaped(json, text, from, shortestEnd);
 	}
 
-	private String toJsonParameter(String key, String visibleKey, Properties data, boolean addComma, boolean getShortest)
+	private static void appendEscaped(StringBuilder json, String text, int start, int end)
+	{
+		for(int i=start; i<end; i++)
+		{
+			char c=text.charAt(i);
+			switch(c)
+			{
+				case '"':
+					json.append("\\\"");
+					break;
+				case '\\':
+					json.append("\\\\");
+					break;
+				case '\n':
+					json.append("\\n");
+					break;
+				case '\r':
+					json.append("\\r");
+					break;
+				case '\t':
+					json.append("\\t");
+					break;
+				default:
+					if(c<0x20)
+					{
+						json.append("\\u00").append(HEX_DIGITS[c>>4]).append(HEX_DIGITS[c&0xF]);
+					}
+					else
+					{
+						json.append(c);
+					}
+			}
+		}
+	}
+
+	private boolean appendJsonParameter(StringBuilder json, String key, String visibleKey, Properties data, boolean addComma, boolean getShortest)
 	{
-		String json="";
 		String value = (String)data.get(key);
 		if(value!=null && !value.equalsIgnoreCase("null") && value.length()>0)
 		{
 			if(addComma)
 			{
-				json+=",";
+				json.append(',');
 			}
+			json.append(visibleKey).append(":\"");
 			if(getShortest)
 			{
-				value=getShortestParameterValue(value);
+				appendShortestParameterValue(json, value);
 			}
-//			value=value.replace(',', ' ');
-			json+=visibleKey+":\""+value+"\"";
+			else
+			{
+				appendEscaped(json, value, 0, value.length());
+			}
+			json.append('"');
+			return true;
 		}
-		return json;
+		return false;
 	}
 
 	public String toJson(Properties p)
@@ -228,29 +431,40 @@ public class SimiloLLM
 	
 	public String toJson(Properties p, boolean includeWidgetId)
 	{
-		String json="{";
+		StringBuilder json=new StringBuilder(256);
+		appendJson(json, p, includeWidgetId);
+		return json.toString();
+	}
+
+	/**
+	 * Append an element as JSON (escaped values) to a builder that can be reused for a whole prompt
+	 * @param json The builder
+	 * @param p The element
+	 * @param includeWidgetId true to include the widget_id
+	 * @return The builder
+	 */
+	public StringBuilder appendJson(StringBuilder json, Properties p, boolean includeWidgetId)
+	{
+		json.append('{');
+		boolean addComma=false;
 		if(includeWidgetId)
 		{
-			json+=toJsonParameter("widget_id", p, false);
-			json+=toJsonParameter("tag", p, true);
+			addComma=appendJsonParameter(json, "widget_id", p, false);
 		}
-		else
-		{
-			json+=toJsonParameter("tag", p, false);
-		}
-		json+=toJsonParameter("visible_text", "text", p, true, false);
-		json+=toJsonParameter("class", p, true);
-		json+=toJsonParameter("id", p, true);
-		json+=toJsonParameter("name", p, true);
-		json+=toJsonParameter("href", p, true);
-		json+=toJsonParameter("location", p, true);
-		json+=toJsonParameter("area", p, true);
-		json+=toJsonParameter("shape", p, true);
-		json+=toJsonParameter("alt", p, true);
-		json+=toJsonParameter("is_button", p, true);
-		json+=toJsonParameter("xpath", "xpath", p, true, true);
-		json+=toJsonParameter("neighbor_text", p, true);
-		json+="}";
+		addComma|=appendJsonParameter(json, "tag", p, addComma);
+		addComma|=appendJsonParameter(json, "visible_text", "text", p, addComma, false);
+		addComma|=appendJsonParameter(json, "class", p, addComma);
+		addComma|=appendJsonParameter(json, "id", p, addComma);
+		addComma|=appendJsonParameter(json, "name", p, addComma);
+		addComma|=appendJsonParameter(json, "href", p, addComma);
+		addComma|=appendJsonParameter(json, "location", p, addComma);
+		addComma|=appendJsonParameter(json, "area", p, addComma);
+		addComma|=appendJsonParameter(json, "shape", p, addComma);
+		addComma|=appendJsonParameter(json, "alt", p, addComma);
+		addComma|=appendJsonParameter(json, "is_button", p, addComma);
+		addComma|=appendJsonParameter(json, "xpath", "xpath", p, addComma, true);
+		appendJsonParameter(json, "neighbor_text", p, addComma);
+		json.append('}');
 		return json;
 	}
 
@@ -263,4 +477,28 @@ public class SimiloLLM
 		}
 		return locators;
 	}
+
+	/**
+	 * Create a batch of candidates (for Similo.scoreBatch) without creating locators
+	 * @param list Rows from readCSV
+	 * @return The batch (with the same metadata as toLocators)
+	 */
+	public CandidateBatch toCandidateBatch(List<Properties> list)
+	{
+		return CandidateBatch.fromRows(list, this::getLocatorValue, this::toLocator);
+	}
+
+	private String getLocatorValue(Properties data, String key)
+	{
+		String value = (String)data.get(key);
+		if(value==null || value.equalsIgnoreCase("null") || value.length()==0)
+		{
+			return null;
+		}
+		if("neighbor_text".equals(key))
+		{
+			value=value.replace(',', ' ');
+		}
+		return value;
+	}
 }
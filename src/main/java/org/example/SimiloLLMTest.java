@@ -10,12 +10,14 @@ import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.Random;
 import java.util.regex.Pattern;
@@ -27,6 +29,7 @@ public class SimiloLLMTest
 {
 	private static Font textBoxFont = new Font("Arial", Font.PLAIN, 32);
 	private static BasicStroke auraStroke=new BasicStroke(5);
+	private static final int STREAM_CHUNK_SIZE=10000;
 
     public static void main(String[] args) {
         // Program logic goes here
@@ -191,15 +194,7 @@ public class SimiloLLMTest
 
 	private void writeLine(String filename, String text)
 	{
-		String logMessage = text + "\r\n";
-		File file = new File(filename);
-		try
-		{
-			FileOutputStream o = new FileOutputStream(file, true);
-			o.write(logMessage.getBytes());
-			o.close();
-		}
-		catch (Exception e) {}
+		AsyncLog.writeLine(filename, text);
 	}
 
 	@Test
@@ -313,12 +308,13 @@ public class SimiloLLMTest
 		Similo similo=new Similo();
 		SimiloLLM similoGPT=new SimiloLLM();
 
-		List<Properties> dataOld=similoGPT.readCSV("old.txt");
-		List<Properties> dataNew=similoGPT.readCSV("new.txt");
-		List<Properties> oracles=similoGPT.readCSV("oracles.txt");
+		ElementDataset dataOld=similoGPT.readDatasetCached("old.txt");
+		ElementDataset dataNew=similoGPT.readDatasetCached("new.txt");
+		List<Properties> oracles=similoGPT.readCSV("oracles.txt", "app", "fromxpath", "toxpath");
 		System.out.println("No rows: "+dataOld.size());
 		System.out.println("No rows: "+dataNew.size());
 		System.out.println("No rows: "+oracles.size());
+		CandidateCache candidateCache=new CandidateCache(similoGPT, dataNew);
 
 		int correctCount=0;
 		int inCorrectCount=0;
@@ -338,11 +334,10 @@ public class SimiloLLMTest
 			Properties target=similoGPT.getByXpath(app, fromXPath, dataOld);
 			if(target!=null)
 			{
-				List<Properties> candidates=similoGPT.getByApp(app, dataNew);
+				CandidateBatch candidates=candidateCache.getCandidates(app);
 				Locator targetLocator=similoGPT.toLocator(target);
-				List<Locator> candidateLocators=similoGPT.toLocators(candidates);
-				List<Locator> bestLocators=similo.similo(targetLocator, candidateLocators);
-				Locator bestLocator=bestLocators.get(0);
+				double[] scores=similo.scoreBatch(targetLocator, candidates);
+				Locator bestLocator=candidates.topLocators(scores, 1).get(0);
 				String bestXpath=(String)bestLocator.getMetadata("xpath");
 
 				if(containsParameterValue(bestXpath, toXPath))
@@ -371,15 +366,237 @@ public class SimiloLLMTest
 		log("results_von.txt", "Incorrect: "+inCorrectCount);
 	}
 
+	/**
+	 * Same as testVONSimilo with the datasets split by app on disk and one app at a time in memory
+	 */
+	@Test
+	public void testVONSimiloPartitioned()
+	{
+		Similo similo=new Similo();
+		SimiloLLM similoGPT=new SimiloLLM();
+
+		AppPartitions partitionsOld=null;
+		AppPartitions partitionsNew=null;
+		AppPartitions partitionsOracles=null;
+		try
+		{
+			partitionsOld=AppPartitions.partition("old.txt");
+			partitionsNew=AppPartitions.partition("new.txt");
+			partitionsOracles=AppPartitions.partition("oracles.txt", "app", "fromxpath", "toxpath");
+
+			int correctCount=0;
+			int inCorrectCount=0;
+			int noCandidatesCount=0;
+			int noOracles=0;
+
+			long startAll=System.currentTimeMillis();
+
+			int oracleNo=0;
+			for(String app:partitionsOracles.getApps())
+			{
+				ElementDataset dataOld=new ElementDataset(partitionsOld.read(app));
+				ElementDataset dataNew=new ElementDataset(partitionsNew.read(app));
+				List<Properties> oracles=partitionsOracles.read(app);
+				CandidateBatch candidates=similoGPT.toCandidateBatch(dataNew.getByApp(app));
+				System.out.println("App: "+app+" rows: "+dataOld.size()+", "+dataNew.size()+" oracles: "+oracles.size());
+				noOracles+=oracles.size();
+
+				for(Properties oracle:oracles)
+				{
+					oracleNo++;
+					System.out.println("Oracle no: "+oracleNo);
+
+					String fromXPath=(String)oracle.get("fromxpath");
+					String toXPath=(String)oracle.get("toxpath");
+
+					Properties target=similoGPT.getByXpath(app, fromXPath, dataOld);
+					if(target==null)
+					{
+						System.out.println("Target not found for: "+app+" - "+fromXPath);
+					}
+					else if(candidates.size()==0)
+					{
+						// The app has no rows in the new dataset
+						System.out.println("No candidates for: "+app+" - "+fromXPath);
+						noCandidatesCount++;
+					}
+					else
+					{
+						Locator targetLocator=similoGPT.toLocator(target);
+						double[] scores=similo.scoreBatch(targetLocator, candidates);
+						Locator bestLocator=candidates.topLocators(scores, 1).get(0);
+						String bestXpath=(String)bestLocator.getMetadata("xpath");
+
+						if(containsParameterValue(bestXpath, toXPath))
+						{
+							log("results_von.txt", "Similo Correct");
+							correctCount++;
+						}
+						else
+						{
+							log("results_von.txt", "Similo Incorrect");
+							inCorrectCount++;
+						}
+					}
+				}
+			}
+			long endAll=System.currentTimeMillis();
+			long durationAll=endAll-startAll;
+			log("performance_von.txt", "TotaL: "+durationAll);
+			log("performance_von.txt", "Average: "+durationAll/Math.max(noOracles, 1));
+
+			log("results_von.txt", "\nTotal:");
+			log("results_von.txt", "Correct: "+correctCount);
+			log("results_von.txt", "Incorrect: "+inCorrectCount);
+			log("results_von.txt", "No candidates: "+noCandidatesCount);
+		}
+		finally
+		{
+			// Delete the partitions also if the evaluation fails
+			for(AppPartitions partitions:Arrays.asList(partitionsOld, partitionsNew, partitionsOracles))
+			{
+				if(partitions!=null)
+				{
+					partitions.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Same as testVONSimilo with the new dataset streamed from file (LocatorReader) instead of held in memory.
+	 * The rows of an app are scored in chunks and the best candidate of each oracle is kept.
+	 */
+	@Test
+	public void testVONSimiloStreamed()
+	{
+		Similo similo=new Similo();
+		SimiloLLM similoGPT=new SimiloLLM();
+
+		ElementDataset dataOld=similoGPT.readDatasetCached("old.txt");
+		List<Properties> oracles=similoGPT.readCSV("oracles.txt", "app", "fromxpath", "toxpath");
+		System.out.println("No rows: "+dataOld.size());
+		System.out.println("No rows: "+oracles.size());
+
+		int correctCount=0;
+		int inCorrectCount=0;
+
+		long startAll=System.currentTimeMillis();
+
+		// The targets of the oracles by app
+		Map<String, List<Integer>> oraclesByApp=new HashMap<String, List<Integer>>();
+		Locator[] targetLocators=new Locator[oracles.size()];
+		for(int i=0; i<oracles.size(); i++)
+		{
+			Properties oracle=oracles.get(i);
+			String app=(String)oracle.get("app");
+			String fromXPath=(String)oracle.get("fromxpath");
+			Properties target=similoGPT.getByXpath(app, fromXPath, dataOld);
+			if(target!=null)
+			{
+				targetLocators[i]=similoGPT.toLocator(target);
+				oraclesByApp.computeIfAbsent(app, key -> new ArrayList<Integer>()).add(i);
+			}
+			else
+			{
+				System.out.println("Target not found for: "+app+" - "+fromXPath);
+			}
+		}
+
+		// Stream the candidates
+		Locator[] bestLocators=new Locator[oracles.size()];
+		LocatorReader reader=similoGPT.readLocators("new.txt", "app");
+		try
+		{
+			List<Locator> chunk=new ArrayList<Locator>();
+			String chunkApp=null;
+			while(reader.hasNext())
+			{
+				Locator locator=reader.next();
+				String app=locator.getMetadata("app");
+				if(chunk.size()>=STREAM_CHUNK_SIZE || !Objects.equals(app, chunkApp))
+				{
+					scoreChunk(similo, chunk, oraclesByApp.get(chunkApp), targetLocators, bestLocators);
+					chunk=new ArrayList<Locator>();
+					chunkApp=app;
+				}
+				if(oraclesByApp.containsKey(app))
+				{
+					chunk.add(locator);
+				}
+			}
+			scoreChunk(similo, chunk, oraclesByApp.get(chunkApp), targetLocators, bestLocators);
+		}
+		finally
+		{
+			reader.close();
+		}
+
+		for(int i=0; i<oracles.size(); i++)
+		{
+			if(targetLocators[i]==null)
+			{
+				continue;
+			}
+			Properties oracle=oracles.get(i);
+			if(bestLocators[i]==null)
+			{
+				System.out.println("No candidates for: "+oracle.get("app")+" - "+oracle.get("fromxpath"));
+				continue;
+			}
+			String bestXpath=(String)bestLocators[i].getMetadata("xpath");
+			if(containsParameterValue(bestXpath, (String)oracle.get("toxpath")))
+			{
+				log("results_von.txt", "Similo Correct");
+				correctCount++;
+			}
+			else
+			{
+				log("results_von.txt", "Similo Incorrect");
+				inCorrectCount++;
+			}
+		}
+		long endAll=System.currentTimeMillis();
+		long durationAll=endAll-startAll;
+		log("performance_von.txt", "TotaL: "+durationAll);
+		log("performance_von.txt", "Average: "+durationAll/Math.max(oracles.size(), 1));
+
+		log("results_von.txt", "\nTotal:");
+		log("results_von.txt", "Correct: "+correctCount);
+		log("results_von.txt", "Incorrect: "+inCorrectCount);
+	}
+
+	/**
+	 * Score a chunk of candidates (of one app) and keep the best candidate of each oracle
+	 */
+	private void scoreChunk(Similo similo, List<Locator> chunk, List<Integer> oracleIndexes, Locator[] targetLocators, Locator[] bestLocators)
+	{
+		if(chunk.isEmpty() || oracleIndexes==null)
+		{
+			return;
+		}
+		CandidateBatch candidates=new CandidateBatch(chunk);
+		for(int i:oracleIndexes)
+		{
+			double[] scores=similo.scoreBatch(targetLocators[i], candidates);
+			Locator bestLocator=candidates.topLocators(scores, 1).get(0);
+			// The first of equal scores, same as topLocators of all candidates
+			if(bestLocators[i]==null || (int)(bestLocator.getScore()*1000-bestLocators[i].getScore()*1000)>0)
+			{
+				bestLocators[i]=bestLocator;
+			}
+		}
+	}
+
 	@Test
 	public void testVONSimiloOutliers()
 	{
 		Similo similo=new Similo();
 		SimiloLLM similoGPT=new SimiloLLM();
 
-		List<Properties> dataOld=similoGPT.readCSV("old.txt");
-		List<Properties> dataNew=similoGPT.readCSV("new.txt");
-		List<Properties> oracles=similoGPT.readCSV("oracles.txt");
+		ElementDataset dataOld=similoGPT.readDatasetCached("old.txt");
+		ElementDataset dataNew=similoGPT.readDatasetCached("new.txt");
+		List<Properties> oracles=similoGPT.readCSV("oracles.txt", "app", "fromxpath", "toxpath");
 		System.out.println("No rows: "+dataOld.size());
 		System.out.println("No rows: "+dataNew.size());
 		System.out.println("No rows: "+oracles.size());
@@ -466,9 +683,10 @@ public class SimiloLLMTest
 		Similo similo=new Similo();
 		SimiloLLM similoGPT=new SimiloLLM();
 
-		List<Properties> dataOld=similoGPT.readCSV("old.txt");
-		List<Properties> dataNew=similoGPT.readCSV("new.txt");
-		List<Properties> oracles=similoGPT.readCSV("oracles.txt");
+		ElementDataset dataOld=similoGPT.readDatasetCached("old.txt");
+		ElementDataset dataNew=similoGPT.readDatasetCached("new.txt");
+		List<Properties> oracles=similoGPT.readCSV("oracles.txt", "app", "fromxpath", "toxpath");
+		OracleIndex oracleIndex=new OracleIndex(oracles);
 		System.out.println("No rows: "+dataOld.size());
 		System.out.println("No rows: "+dataNew.size());
 		System.out.println("No rows: "+oracles.size());
@@ -502,7 +720,7 @@ public class SimiloLLMTest
 				List<Locator> candidateLocators=similoGPT.toLocators(candidates);
 				List<Locator> bestLocators=similo.similo(targetLocator, candidateLocators);
 
-				List<String> oracleXmls=similoGPT.getOracleXpaths(app, fromXPath, oracles);
+				List<String> oracleXmls=similoGPT.getOracleXpaths(app, fromXPath, oracleIndex);
 				for(String oracleXml:oracleXmls)
 				{
 					oracleXml=pathToIndexPath(oracleXml);
@@ -512,12 +730,12 @@ public class SimiloLLMTest
 						boolean isOracleAmongTheBest=false;
 						String oracleWidgetId = (String)targetOracle.get("widget_id");
 
-						String message="";
-						message+="Given the following candidate web elements (|| means that an attribute can have multiple values):\n";
+						StringBuilder message=new StringBuilder(4096);
+						message.append("Given the following candidate web elements (|| means that an attribute can have multiple values):\n");
 						for(int i=0; i<10 && i<bestLocators.size(); i++)
 						{
 							Locator locator=bestLocators.get(i);
-							message+=similoGPT.toJson(locator.getProperties())+"\n";
+							similoGPT.appendJson(message, locator.getProperties(), true).append('\n');
 
 							String locatorWidgetId = (String)locator.getMetadata("widget_id");
 							if(oracleWidgetId.equals(locatorWidgetId))
@@ -525,9 +743,9 @@ public class SimiloLLMTest
 								isOracleAmongTheBest=true;
 							}
 						}
-						message+="\nfind the one that is most similar to the element:\n";
-						message+=similoGPT.toJson(target, false)+"\n";
-						message+="Answer with the widget_id number(digits) only, no explanation or text characters.\n";
+						message.append("\nfind the one that is most similar to the element:\n");
+						similoGPT.appendJson(message, target, false).append('\n');
+						message.append("Answer with the widget_id number(digits) only, no explanation or text characters.\n");
 
 						Conversation conv=new Conversation();
 						conv.addSystemMessage("Given an old (target) web element and a list of up to 10 new candidate web elements from an evolved web application, help me identify the most likely new web element that the old element has been changed into. The old and new elements will have multiple attributes, such as tag, text, class, href, location, area, shape, xpath, neighbor_text, and potentially others. Consider that changes can be made manually by human developers or through (automated) software engineering tools. There are no specific weightings for the provided attributes. Just reply with one of the new candidate elements and with a list of (bulleted) motivations for why you think this is the most likely new element (that the old one has been changed to).");
@@ -545,7 +763,7 @@ public class SimiloLLMTest
 						sleep(1000);
 
 						long start=System.currentTimeMillis();
-						String response=conv.addMessage(message);
+						String response=conv.addMessage(message.toString());
 
 						long end=System.currentTimeMillis();
 						long duration=end-start;
@@ -599,9 +817,10 @@ public class SimiloLLMTest
 		Similo similo=new Similo();
 		SimiloLLM similoGPT=new SimiloLLM();
 
-		List<Properties> dataOld=similoGPT.readCSV("old.txt");
-		List<Properties> dataNew=similoGPT.readCSV("new.txt");
-		List<Properties> oracles=similoGPT.readCSV("oracles.txt");
+		ElementDataset dataOld=similoGPT.readDatasetCached("old.txt");
+		ElementDataset dataNew=similoGPT.readDatasetCached("new.txt");
+		List<Properties> oracles=similoGPT.readCSV("oracles.txt", "app", "fromxpath", "toxpath");
+		OracleIndex oracleIndex=new OracleIndex(oracles);
 		System.out.println("No rows: "+dataOld.size());
 		System.out.println("No rows: "+dataNew.size());
 		System.out.println("No rows: "+oracles.size());
@@ -647,7 +866,7 @@ public class SimiloLLMTest
 					continue;
 				}
 
-				List<String> oracleXmls=similoGPT.getOracleXpaths(app, fromXPath, oracles);
+				List<String> oracleXmls=similoGPT.getOracleXpaths(app, fromXPath, oracleIndex);
 				for(String oracleXml:oracleXmls)
 				{
 					oracleXml=pathToIndexPath(oracleXml);
@@ -657,12 +876,12 @@ public class SimiloLLMTest
 						boolean isOracleAmongTheBest=false;
 						String oracleWidgetId = (String)targetOracle.get("widget_id");
 
-						String message="";
-						message+="Given the following candidate web elements (|| means that an attribute can have multiple values):\n";
+						StringBuilder message=new StringBuilder(4096);
+						message.append("Given the following candidate web elements (|| means that an attribute can have multiple values):\n");
 						for(int i=0; i<10 && i<bestLocators.size(); i++)
 						{
 							Locator locator=bestLocators.get(i);
-							message+=similoGPT.toJson(locator.getProperties())+"\n";
+							similoGPT.appendJson(message, locator.getProperties(), true).append('\n');
 
 							String locatorWidgetId = (String)locator.getMetadata("widget_id");
 							if(oracleWidgetId.equals(locatorWidgetId))
@@ -670,10 +889,10 @@ public class SimiloLLMTest
 								isOracleAmongTheBest=true;
 							}
 						}
-						message+="\nfind the one that is most similar to the element:\n";
-						message+=similoGPT.toJson(target, false)+"\n";
-//						message+="Answer with the widget_id number(digits) only, no explanation or text characters.\n";
-						message+="Answer with the widget_id (digit) of the most similar and motivate why (using a list)\n";
+						message.append("\nfind the one that is most similar to the element:\n");
+						similoGPT.appendJson(message, target, false).append('\n');
+//						message.append("Answer with the widget_id number(digits) only, no explanation or text characters.\n");
+						message.append("Answer with the widget_id (digit) of the most similar and motivate why (using a list)\n");
 
 						Conversation conv=new Conversation();
 						conv.addSystemMessage("Given an old (target) web element and a list of up to 10 new candidate web elements from an evolved web application, help me identify the most likely new web element that the old element has been changed into. The old and new elements will have multiple attributes, such as tag, text, class, href, location, area, shape, xpath, neighbor_text, and potentially others. Consider that changes can be made manually by human developers or through (automated) software engineering tools. There are no specific weightings for the provided attributes. Just reply with one of the new candidate elements and with a list of (bulleted) motivations for why you think this is the most likely new element (that the old one has been changed to).");
@@ -695,7 +914,7 @@ public class SimiloLLMTest
 						sleep(1000);
 
 						long start=System.currentTimeMillis();
-						String response=conv.addMessage(message);
+						String response=conv.addMessage(message.toString());
 
 						log("found.txt", response);
 						log("found.txt", "");
@@ -755,7 +974,8 @@ public class SimiloLLMTest
 
 		List<Properties> dataOld=similoGPT.readCSV("old.txt");
 		List<Properties> dataNew=similoGPT.readCSV("new.txt");
-		List<Properties> oracles=similoGPT.readCSV("oracles.txt");
+		List<Properties> oracles=similoGPT.readCSV("oracles.txt", "app", "fromxpath", "toxpath");
+		OracleIndex oracleIndex=new OracleIndex(oracles);
 		System.out.println("No rows: "+dataOld.size());
 		System.out.println("No rows: "+dataNew.size());
 		System.out.println("No rows: "+oracles.size());
@@ -828,7 +1048,7 @@ public class SimiloLLMTest
 					}
 					System.out.println("Best similarity score for: "+text+": "+bestLocator.getScore());
 
-					List<String> oracleXmls=similoGPT.getOracleXpaths(app, fromXPath, oracles);
+					List<String> oracleXmls=similoGPT.getOracleXpaths(app, fromXPath, oracleIndex);
 					for(String oracleXml:oracleXmls)
 					{
 						oracleXml=pathToIndexPath(oracleXml);
@@ -847,15 +1067,15 @@ public class SimiloLLMTest
 							boolean isOracleAmongTheBest=false;
 							String oracleWidgetId = (String)targetOracle.get("widget_id");
 
-							String message="";
+							StringBuilder message=new StringBuilder(4096);
 							log("not_found.txt", "Oracle:");
 							log("not_found.txt", similoGPT.toJson(targetOracle));
 							log("not_found.txt", "");
-							message+="Given the following candidate web elements (|| means that an attribute can have multiple values):\n";
+							message.append("Given the following candidate web elements (|| means that an attribute can have multiple values):\n");
 							for(int i=0; i<10 && i<bestLocators.size(); i++)
 							{
 								Locator locator=bestLocators.get(i);
-								message+=similoGPT.toJson(locator.getProperties())+"\n";
+								similoGPT.appendJson(message, locator.getProperties(), true).append('\n');
 
 								String locatorWidgetId = (String)locator.getMetadata("widget_id");
 								if(oracleWidgetId.equals(locatorWidgetId))
@@ -863,10 +1083,10 @@ public class SimiloLLMTest
 									isOracleAmongTheBest=true;
 								}
 							}
-							message+="\nfind the one that is most similar to the element:\n";
-							message+=similoGPT.toJson(target, false)+"\n";
-							message+="Answer with the widget_id number(digits) only, no explanation or text characters.\n";
-							log("not_found.txt", message);
+							message.append("\nfind the one that is most similar to the element:\n");
+							similoGPT.appendJson(message, target, false).append('\n');
+							message.append("Answer with the widget_id number(digits) only, no explanation or text characters.\n");
+							log("not_found.txt", message.toString());
 
 //							Conversation conv=new Conversation();
 /*
@@ -904,7 +1124,7 @@ public class SimiloLLMTest
 							sleep(1000);
 
 							long start=System.currentTimeMillis();					
-							String response=conv.addMessage(message);
+							String response=conv.addMessage(message.toString());
 */
 							long start=System.currentTimeMillis();
 							String response="";
@@ -1003,6 +1223,7 @@ public class SimiloLLMTest
 		List<Properties> dataOld=similoGPT.readCSV("csv_all_old_witheqs.csv");
 		List<Properties> dataNew=similoGPT.readCSV("csv_all_new_witheqs.csv");
 		List<Properties> oracles=visibleOracles();
+		OracleIndex oracleIndex=new OracleIndex(oracles);
 		System.out.println("No rows: "+dataOld.size());
 		System.out.println("No rows: "+dataNew.size());
 		System.out.println("No rows: "+oracles.size());
@@ -1022,7 +1243,7 @@ public class SimiloLLMTest
 			List<Locator> bestLocators=similo.similo(targetLocator, candidateLocators);
 			Locator bestLocator=bestLocators.get(0);
 			String bestXpath=(String)bestLocator.getMetadata("xpath");
-			if(similoGPT.oracleExist(app, fromXPath, bestXpath, oracles))
+			if(similoGPT.oracleExist(app, fromXPath, bestXpath, oracleIndex))
 			{
 				System.out.println("Found");
 				foundCount++;
@@ -1044,7 +1265,7 @@ public class SimiloLLMTest
 					text="unknown";
 				}
 				System.out.println("Best similarity score for: "+text+": "+bestLocator.getScore());
-				List<String> oracleXmls=similoGPT.getOracleXpaths(app, fromXPath, oracles);
+				List<String> oracleXmls=similoGPT.getOracleXpaths(app, fromXPath, oracleIndex);
 				for(String oracleXml:oracleXmls)
 				{
 					Properties targetOracle=similoGPT.getByXpath(app, oracleXml, dataNew);
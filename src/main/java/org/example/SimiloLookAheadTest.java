@@ -0,0 +1,196 @@
+package org.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+/**
+ * lookAhead ranks the locators of a single extraction while other extractions run on the driver thread
+ */
+public class SimiloLookAheadTest
+{
+	@Test
+	public void lookAheadDuringExtractions() throws Exception
+	{
+		File folder=Files.createTempDirectory("lookahead").toFile();
+		Similo similo=new Similo(createDriver(new AtomicInteger()), folder.getPath());
+		similo.setStepDelay(0);
+		similo.setTimeout(1);
+		File fileA=createLocatorFile(folder, "a", 1);
+		File fileB=createLocatorFile(folder, "b", 2);
+
+		AtomicBoolean running=new AtomicBoolean(true);
+		Thread extractions=new Thread(() -> {
+			while(running.get())
+			{
+				similo.click(fileA);
+			}
+		});
+		try
+		{
+			extractions.start();
+			int rankings=0;
+			long startTime=System.currentTimeMillis();
+			while(rankings<200 && System.currentTimeMillis()-startTime<20000)
+			{
+				CompletableFuture<List<Locator>> ranking=similo.lookAhead(fileB);
+				if(ranking!=null)
+				{
+					assertSamePage(ranking.join());
+					rankings++;
+				}
+			}
+			assertTrue("No look-ahead ranked", rankings>0);
+		}
+		finally
+		{
+			running.set(false);
+			extractions.join();
+			similo.close();
+			for(File file:folder.listFiles())
+			{
+				file.delete();
+			}
+			folder.delete();
+		}
+	}
+
+	/**
+	 * All the locators are from the same page and have not changed since the extraction
+	 */
+	private static void assertSamePage(List<Locator> locators)
+	{
+		assertNotNull(locators);
+		assertTrue(locators.size()>0);
+		String id=locators.get(0).getMetadata("id");
+		int page=Integer.parseInt(id.substring(4));
+		assertEquals(pageSize(page), locators.size());
+		for(Locator locator:locators)
+		{
+			assertEquals(id, locator.getMetadata("id"));
+			assertEquals(""+page, locator.getMetadata("x"));
+			assertEquals(page, locator.getLocationArea().x);
+			String xpath=locator.getMetadata("xpath");
+			String item=xpath.substring(xpath.lastIndexOf('[')+1, xpath.length()-1);
+			assertEquals("page "+page+" item "+item, locator.getMetadata("text"));
+			assertEquals(Integer.parseInt(item)*30, locator.getLocationArea().y);
+		}
+	}
+
+	private static int pageSize(int page)
+	{
+		return page%5+3;
+	}
+
+	/**
+	 * A JSON array of the elements of a page as returned by the extraction script
+	 */
+	private static String page(int page)
+	{
+		StringBuilder json=new StringBuilder("[");
+		for(int i=1; i<=pageSize(page); i++)
+		{
+			if(i>1)
+			{
+				json.append(',');
+			}
+			json.append("{\"tag\":\"DIV\",\"id\":\"page").append(page)
+				.append("\",\"text\":\"page ").append(page).append(" item ").append(i)
+				.append("\",\"xpath\":\"/html/body/div[").append(i)
+				.append("]\",\"x\":").append(page).append(",\"y\":").append(i*30)
+				.append(",\"width\":100,\"height\":20}");
+		}
+		return json.append(']').toString();
+	}
+
+	/**
+	 * A WebDriver that shows a new page on each extraction
+	 */
+	private static WebDriver createDriver(AtomicInteger pages)
+	{
+		WebElement element=(WebElement)proxy(WebElement.class, (proxy, method, args) ->
+			"isDisplayed".equals(method.getName()) ? Boolean.TRUE : defaultValue(proxy, method.getName(), args));
+		InvocationHandler timeouts=(proxy, method, args) ->
+			method.getReturnType().isInstance(proxy) ? proxy : defaultValue(proxy, method.getName(), args);
+		Object timeoutsProxy=proxy(WebDriver.Timeouts.class, timeouts);
+		Object options=proxy(WebDriver.Options.class, (proxy, method, args) ->
+			"timeouts".equals(method.getName()) ? timeoutsProxy : defaultValue(proxy, method.getName(), args));
+		return (WebDriver)Proxy.newProxyInstance(SimiloLookAheadTest.class.getClassLoader(),
+			new Class<?>[] {WebDriver.class, JavascriptExecutor.class}, (proxy, method, args) ->
+			{
+				switch(method.getName())
+				{
+				case "executeScript":
+					String script=(String)args[0];
+					return script.contains("JSON.stringify(result)") ? page(pages.incrementAndGet()) : null;
+				case "findElement":
+					return element;
+				case "manage":
+					return options;
+				default:
+					return defaultValue(proxy, method.getName(), args);
+				}
+			});
+	}
+
+	private static Object proxy(Class<?> type, InvocationHandler handler)
+	{
+		return Proxy.newProxyInstance(SimiloLookAheadTest.class.getClassLoader(), new Class<?>[] {type}, handler);
+	}
+
+	private static Object defaultValue(Object proxy, String methodName, Object[] args)
+	{
+		switch(methodName)
+		{
+		case "equals":
+			return proxy==args[0];
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		case "toString":
+			return "Fake";
+		default:
+			return null;
+		}
+	}
+
+	private static File createLocatorFile(File folder, String name, int item) throws IOException
+	{
+		Properties properties=new Properties();
+		properties.setProperty("tag", "div");
+		properties.setProperty("text", "page 1 item "+item);
+		properties.setProperty("xpath", "/html/body/div["+item+"]");
+		properties.setProperty("x", "1");
+		properties.setProperty("y", ""+item*30);
+		properties.setProperty("width", "100");
+		properties.setProperty("height", "20");
+		File file=new File(folder, name+".properties");
+		OutputStream out=new FileOutputStream(file);
+		try
+		{
+			properties.store(out, null);
+		}
+		finally
+		{
+			out.close();
+		}
+		return file;
+	}
+}